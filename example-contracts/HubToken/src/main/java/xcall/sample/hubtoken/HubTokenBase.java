@@ -28,15 +28,29 @@ public class HubTokenBase extends HubTokenBasic {
 
         // mint the initial token supply here
         Context.require(_initialSupply.compareTo(BigInteger.ZERO) >= 0);
-        mint(new NetworkAddress(_nid, Context.getCaller()), _initialSupply);
+        mint(nativeAddress(Context.getCaller()), _initialSupply);
+        ledger.flush();
     }
 
     @External
     public void addChain(String _networkAddress) {
         Context.require(Context.getOwner().equals(Context.getCaller()), "Only owner can add new chains");
         NetworkAddress networkAddress = NetworkAddress.parse(_networkAddress);
+        // A second spoke on a net would be counted twice by the cross chain supply
+        Context.require(spokeContracts.get(networkAddress.net()) == null, networkAddress.net() + " is already connected");
+        networkIds.intern(networkAddress.net());
         connectedChains.add(networkAddress);
         spokeContracts.set(networkAddress.net(), networkAddress);
     }
 
+    /**
+     * Points a connected net at a new spoke contract, for a spoke that was upgraded to a new address.
+     * The supply on the old spoke is moved to the new one, and messages from the old one are no longer accepted.
+     */
+    @External
+    public void updateChain(String _networkAddress) {
+        Context.require(Context.getOwner().equals(Context.getCaller()), "Only owner can update chains");
+        replaceSpoke(NetworkAddress.parse(_networkAddress));
+    }
+
 }
@@ -27,6 +27,7 @@ import xcall.score.lib.util.ProtocolPrefixNetworkAddress;
 import xcall.score.lib.util.NetworkAddress;
 
 import java.math.BigInteger;
+import java.util.Map;
 
 import icon.xcall.lib.messages.HubTokenMessages;
 
@@ -34,16 +35,56 @@ public class HubTokenBasic extends SpokeTokenBasic implements HubToken {
     private final static String CONNECTED_CHAINS = "connected_chains";
     private final static String SPOKE_CONTRACTS = "spoke_contract";
     private final static String CROSS_CHAIN_SUPPLY = "cross_chain_supply";
+    private final static String CROSS_CHAIN_SUPPLY_TOTAL = "cross_chain_supply_total";
+    private final static String SUPPLY_CHECK_ROUND = "supply_check_round";
+    private final static String SUPPLY_CHECK_INDEX = "supply_check_index";
+    private final static String SUPPLY_CHECK_SUM = "supply_check_sum";
+    private final static String SUPPLY_CHECKED_ROUND = "supply_checked_round";
+    private final static String COMPACT_ROLLBACK = "compact_rollback";
+    private final static String NETTING_ENABLED = "netting_enabled";
+    private final static String NETTING_MAX_SIZE = "netting_max_size";
+    private final static String NETTING_MAX_BLOCKS = "netting_max_blocks";
+    private final static String BATCH_SPOKES = "batch_spokes";
+    private final static String PENDING_SINCE = "pending_since";
+    private final static String PENDING_NETS = "pending_nets";
+    private final static String PENDING_CALLS = "pending_calls_";
+    private final static String PENDING_ROLLBACKS = "pending_rollbacks_";
+
+    static final BigInteger DEFAULT_NETTING_MAX_SIZE = BigInteger.valueOf(20);
+    static final BigInteger DEFAULT_NETTING_MAX_BLOCKS = BigInteger.valueOf(10);
 
     static final Address ZERO_ADDRESS = new Address(new byte[Address.LENGTH]);
 
     protected final DictDB<String, BigInteger> crossChainSupply = Context.newDictDB(CROSS_CHAIN_SUPPLY, BigInteger.class);
+    // Sum of crossChainSupply, null until recomputed on deployments from before it was kept
+    protected final VarDB<BigInteger> crossChainSupplyTotal = Context.newVarDB(CROSS_CHAIN_SUPPLY_TOTAL, BigInteger.class);
+    // Paged recompute of crossChainSupplyTotal, index and sum are null when no recompute is running
+    private final VarDB<BigInteger> supplyCheckRound = Context.newVarDB(SUPPLY_CHECK_ROUND, BigInteger.class);
+    private final VarDB<BigInteger> supplyCheckIndex = Context.newVarDB(SUPPLY_CHECK_INDEX, BigInteger.class);
+    private final VarDB<BigInteger> supplyCheckSum = Context.newVarDB(SUPPLY_CHECK_SUM, BigInteger.class);
+    // spoke -> round in which it was counted
+    private final DictDB<String, BigInteger> supplyCheckedRound = Context.newDictDB(SUPPLY_CHECKED_ROUND, BigInteger.class);
     protected final ArrayDB<NetworkAddress> connectedChains = Context.newArrayDB(CONNECTED_CHAINS, NetworkAddress.class);
     // net -> address
     protected final DictDB<String, NetworkAddress> spokeContracts = Context.newDictDB(SPOKE_CONTRACTS, NetworkAddress.class);
+    // Rollbacks sent as xCrossTransferRevertCompact instead of xCrossTransferRevert
+    protected final VarDB<Boolean> compactRollback = Context.newVarDB(COMPACT_ROLLBACK, Boolean.class);
+    // net -> whether outbound transfers are queued and sent to its spoke as one batch message
+    protected final DictDB<String, Boolean> nettingEnabled = Context.newDictDB(NETTING_ENABLED, Boolean.class);
+    protected final DictDB<String, BigInteger> nettingMaxSize = Context.newDictDB(NETTING_MAX_SIZE, BigInteger.class);
+    protected final DictDB<String, BigInteger> nettingMaxBlocks = Context.newDictDB(NETTING_MAX_BLOCKS, BigInteger.class);
+    // net -> whether its spoke processes batch messages, which netting needs
+    protected final DictDB<String, Boolean> batchSpokes = Context.newDictDB(BATCH_SPOKES, Boolean.class);
+    // net -> block height of the oldest queued transfer
+    protected final DictDB<String, BigInteger> pendingSince = Context.newDictDB(PENDING_SINCE, BigInteger.class);
+    // Nets with queued transfers, checked for their age limit on every transfer and message
+    protected final ArrayDB<String> pendingNets = Context.newArrayDB(PENDING_NETS, String.class);
 
     public HubTokenBasic(String _nid, String _tokenName, String _symbolName, @Optional BigInteger _decimals) {
        super(_nid, _tokenName, _symbolName, _decimals);
+       if (crossChainSupplyTotal.get() == null && connectedChains.size() == 0) {
+           crossChainSupplyTotal.set(BigInteger.ZERO);
+       }
     }
 
     @EventLog(indexed = 1)
@@ -51,6 +92,11 @@ public class HubTokenBasic extends SpokeTokenBasic implements HubToken {
 
     }
 
+    @EventLog
+    public void CrossChainSupplyRecomputed(BigInteger _previous, BigInteger _total) {
+
+    }
+
     @External(readonly = true)
     public String[] getConnectedChains() {
         int numberOfChains = connectedChains.size();
@@ -69,6 +115,11 @@ public class HubTokenBasic extends SpokeTokenBasic implements HubToken {
 
     @External(readonly = true)
     public BigInteger xTotalSupply() {
+        BigInteger crossChainTotal = crossChainSupplyTotal.get();
+        if (crossChainTotal != null) {
+            return totalSupply().add(crossChainTotal);
+        }
+
         BigInteger supply = totalSupply();
         int numberOfChains = connectedChains.size();
         for (int i = 0; i < numberOfChains; i++) {
@@ -80,79 +131,448 @@ public class HubTokenBasic extends SpokeTokenBasic implements HubToken {
         return supply;
     }
 
+    /**
+     * Recomputes the sum of the supply on all connected chains, {@code _limit} chains per call.
+     * Transfers made between calls are included, the total is replaced when the last chain is counted.
+     */
+    @External
+    public void recomputeCrossChainSupply(int _limit) {
+        Context.require(Context.getOwner().equals(Context.getCaller()), "Only owner can recompute supply");
+        Context.require(_limit > 0, "Invalid limit");
+
+        BigInteger round = supplyCheckRound.getOrDefault(BigInteger.ZERO);
+        BigInteger index = supplyCheckIndex.get();
+        BigInteger sum = supplyCheckSum.getOrDefault(BigInteger.ZERO);
+        if (index == null) {
+            round = round.add(BigInteger.ONE);
+            supplyCheckRound.set(round);
+            index = BigInteger.ZERO;
+            sum = BigInteger.ZERO;
+        }
+
+        int numberOfChains = connectedChains.size();
+        int start = index.intValue();
+        int end = Math.min(numberOfChains, start + _limit);
+        for (int i = start; i < end; i++) {
+            String spokeAddress = connectedChains.get(i).toString();
+            sum = sum.add(crossChainSupply.getOrDefault(spokeAddress, BigInteger.ZERO));
+            supplyCheckedRound.set(spokeAddress, round);
+        }
+
+        if (end < numberOfChains) {
+            supplyCheckIndex.set(BigInteger.valueOf(end));
+            supplyCheckSum.set(sum);
+            return;
+        }
+
+        BigInteger previous = crossChainSupplyTotal.get();
+        crossChainSupplyTotal.set(sum);
+        supplyCheckIndex.set(null);
+        supplyCheckSum.set(null);
+        CrossChainSupplyRecomputed(previous == null ? BigInteger.ZERO : previous, sum);
+    }
+
+    /**
+     * Deletes the zero supply entries of connected chains {@code _start} to {@code _start + _limit},
+     * stored by older versions.
+     */
+    @External
+    public void pruneCrossChainSupply(int _start, int _limit) {
+        Context.require(Context.getOwner().equals(Context.getCaller()), "Only owner can prune supply");
+        Context.require(_start >= 0 && _limit > 0, "Invalid range");
+
+        int end = Math.min(connectedChains.size(), _start + _limit);
+        for (int i = _start; i < end; i++) {
+            String spokeAddress = connectedChains.get(i).toString();
+            BigInteger supply = crossChainSupply.get(spokeAddress);
+            if (supply != null && supply.signum() == 0) {
+                crossChainSupply.set(spokeAddress, null);
+            }
+        }
+    }
+
+    /**
+     * Replaces the spoke of a connected net by {@code spokeAddress}, moving its supply. Netting has to be
+     * disabled for the net, and batch messages are enabled again once the new spoke is known to process them.
+     */
+    protected void replaceSpoke(NetworkAddress spokeAddress) {
+        String net = spokeAddress.net();
+        NetworkAddress previous = spokeContracts.get(net);
+        Context.require(previous != null, net + " is not yet connected");
+        Context.require(!previous.equals(spokeAddress), net + " is already connected to " + spokeAddress);
+        Context.require(!isNetting(net), "Netting is enabled for " + net);
+
+        int numberOfChains = connectedChains.size();
+        for (int i = 0; i < numberOfChains; i++) {
+            if (connectedChains.get(i).equals(previous)) {
+                connectedChains.set(i, spokeAddress);
+                break;
+            }
+        }
+        spokeContracts.set(net, spokeAddress);
+        batchSpokes.set(net, null);
+
+        String from = previous.toString();
+        String to = spokeAddress.toString();
+        crossChainSupply.set(to, crossChainSupply.get(from));
+        crossChainSupply.set(from, null);
+        supplyCheckedRound.set(to, supplyCheckedRound.get(from));
+        supplyCheckedRound.set(from, null);
+    }
+
+    /**
+     * Sends rollbacks with the recipient in its compact form, see {@link #xCrossTransferRevertCompact}.
+     * Nothing is stored for them on the hub.
+     */
+    @External
+    public void setCompactRollback(boolean _enabled) {
+        Context.require(Context.getOwner().equals(Context.getCaller()), "Only owner can configure rollbacks");
+        compactRollback.set(_enabled);
+    }
+
+    @External(readonly = true)
+    public boolean isCompactRollback() {
+        return Boolean.TRUE.equals(compactRollback.get());
+    }
+
+    @External(readonly = true)
+    public Map<String, Object> getNetting(String _net) {
+        return Map.of(
+            "enabled", isNetting(_net),
+            "batchMessages", Boolean.TRUE.equals(batchSpokes.get(_net)),
+            "maxSize", nettingMaxSize.getOrDefault(_net, DEFAULT_NETTING_MAX_SIZE),
+            "maxBlocks", nettingMaxBlocks.getOrDefault(_net, DEFAULT_NETTING_MAX_BLOCKS));
+    }
+
+    @External(readonly = true)
+    public BigInteger pendingTransfers(String _net) {
+        return BigInteger.valueOf(pendingCalls(_net).size());
+    }
+
+    /**
+     * Whether the queue of {@code _net} holds {@code maxSize} transfers or its oldest transfer is
+     * {@code maxBlocks} blocks old, so it should be sent with flushTransfers.
+     */
+    @External(readonly = true)
+    public boolean isTransferDue(String _net) {
+        int count = pendingCalls(_net).size();
+        if (count == 0) {
+            return false;
+        }
+        return count >= nettingMaxSize.getOrDefault(_net, DEFAULT_NETTING_MAX_SIZE).intValue()
+            || isPendingExpired(_net, pendingSince.get(_net), BigInteger.valueOf(Context.getBlockHeight()));
+    }
+
+    /**
+     * Records whether the spoke of {@code _net} processes batch messages, which the Solidity
+     * spoke does not. Netting can only be enabled for spokes that do.
+     */
+    @External
+    public void setBatchMessages(String _net, boolean _supported) {
+        Context.require(Context.getOwner().equals(Context.getCaller()), "Only owner can configure netting");
+        Context.require(spokeContracts.get(_net) != null, _net + " is not yet connected");
+        Context.require(_supported || !isNetting(_net), "Netting is enabled for " + _net);
+        batchSpokes.set(_net, _supported ? Boolean.TRUE : null);
+    }
+
+    /**
+     * Enables queueing of outbound transfers without data to the spoke of {@code _net}, which receives
+     * them as one batch message. The queue is sent once it holds {@code _maxSize} transfers, or once its
+     * oldest transfer is {@code _maxBlocks} blocks old at the next transfer or message on the hub.
+     * A hub without any traffic sends nothing, a keeper has to call flushTransfers when isTransferDue
+     * is true. Disabling sends what is queued.
+     */
+    @External
+    public void setNetting(String _net, boolean _enabled, BigInteger _maxSize, BigInteger _maxBlocks) {
+        Context.require(Context.getOwner().equals(Context.getCaller()), "Only owner can configure netting");
+        Context.require(_maxSize.signum() > 0 && _maxBlocks.signum() >= 0, "Invalid netting limits");
+        NetworkAddress spokeAddress = spokeContracts.get(_net);
+        Context.require(spokeAddress != null, _net + " is not yet connected");
+        Context.require(!_enabled || Boolean.TRUE.equals(batchSpokes.get(_net)), _net + " does not process batch messages");
+        ledger.reset();
+        nettingEnabled.set(_net, _enabled ? Boolean.TRUE : null);
+        nettingMaxSize.set(_net, _maxSize);
+        nettingMaxBlocks.set(_net, _maxBlocks);
+        if (!_enabled) {
+            sendPending(spokeAddress);
+        }
+        ledger.flush();
+    }
+
+    @External
+    public void flushTransfers(String _net) {
+        ledger.reset();
+        NetworkAddress spokeAddress = spokeContracts.get(_net);
+        Context.require(spokeAddress != null, _net + " is not yet connected");
+        sendPending(spokeAddress);
+        ledger.flush();
+    }
+
     @External
     public void crossTransfer(String _to, BigInteger _value, @Optional byte[] _data) {
-        NetworkAddress from = new NetworkAddress(NATIVE_NID, Context.getCaller());
+        ledger.reset();
+        NetworkAddress from = nativeAddress(Context.getCaller());
         NetworkAddress to = NetworkAddress.valueOf(_to, NATIVE_NID);
         if (isNative(to)) {
             transfer(from, to, _value, _data);
-            return;
+        } else {
+            _transferToSpoke(from, to, _value, _data);
         }
-
-        _transferToSpoke(from, to, _value, _data);
+        sendExpiredPending();
+        ledger.flush();
     }
 
-    public void xCrossTransferRevert(String from, String _to, BigInteger _value) {
+    public void xCrossTransferRevert(NetworkAddress from, String _to, BigInteger _value) {
         // Could be unsafe
-        Context.require(NetworkAddress.valueOf(from).account().equals(xCallManager.get().toString()));
+        Context.require(from.account().equals(xCallManager.get().toString()));
         NetworkAddress to = NetworkAddress.valueOf(_to);
         NetworkAddress spokeContract = spokeContracts.get(to.net());
         _transferToICON(spokeContract, to, _value);
     }
 
-    public void xCrossTransfer(String from, String _from, String _to, BigInteger _value, byte[] _data) {
-        NetworkAddress spokeContract = NetworkAddress.valueOf(from);
+    public void xCrossTransfer(NetworkAddress from, String _from, String _to, BigInteger _value, byte[] _data) {
+        NetworkAddress spokeContract = from;
         Context.require(spokeContracts.get(spokeContract.net()).equals(spokeContract), from + " is not a connected contract");
         NetworkAddress to = NetworkAddress.valueOf(_to);
-        _transferToICON(spokeContract, to, _value);
         if (!isNative(to)) {
-            _transferToSpoke(to, to, _value, _data);
+            _routeToSpoke(spokeContract, to, _value, _data);
             return;
         }
 
-        Address address = Address.fromString(to.account());
+        _transferToICON(spokeContract, to, _value);
+
+        Address address = to.accountAddress();
         if (address.isContract()) {
+            ledger.flush();
             Context.call(address, "xTokenFallback", _from, _value, _data);
         }
 
         XTransfer(BigInteger.ZERO, _from, _to, _value, _data);
     }
 
-    public void xWithdraw(String from, BigInteger _value) {
-        NetworkAddress caller = NetworkAddress.valueOf(from);
-        _transferToSpoke(caller, caller, _value, new byte[0]);
+    public void xCrossTransferRevertCompact(NetworkAddress from, byte[] _to, BigInteger _value) {
+        Context.require(from.account().equals(xCallManager.get().toString()));
+        NetworkAddress to = NetworkAddress.fromCompactBytes(_to, networkIds);
+        _transferToICON(connectedSpoke(to), to, _value);
+    }
+
+    public void xWithdraw(NetworkAddress from, BigInteger _value) {
+        _transferToSpoke(from, from, _value, new byte[0]);
     }
 
     public void _transferToICON(NetworkAddress spokeContract, NetworkAddress to,  BigInteger value) {
-        BigInteger prevSourceSupply = crossChainSupply.getOrDefault(spokeContract.toString(), BigInteger.ZERO);
-        BigInteger newSupply = prevSourceSupply.subtract(value);
-        Context.require(newSupply.compareTo(BigInteger.ZERO) >= 0);
-        crossChainSupply.set(spokeContract.toString(), newSupply);
+        addCrossChainSupply(spokeContract, value.negate());
         _mint(to, value);
     }
 
     public void _transferToSpoke(NetworkAddress from, NetworkAddress to,  BigInteger value, byte[] data) {
         _burn(from, value);
-        NetworkAddress spokeAddress = spokeContracts.get(to.net());
-        Context.require(spokeAddress != null, to.net() + " is not yet connected");
-        BigInteger prevSupply = crossChainSupply.getOrDefault(spokeAddress.toString(), BigInteger.ZERO);
-        crossChainSupply.set(spokeAddress.toString(), prevSupply.add(value));
+        NetworkAddress spokeAddress = connectedSpoke(to);
+        addCrossChainSupply(spokeAddress, value);
+        sendToSpoke(spokeAddress, from, to, value, data);
+    }
 
+    /**
+     * Forwards a transfer from one spoke to another by moving supply between them, without
+     * minting and burning on the hub. Sends the same messages and event as _transferToSpoke(to, to, ...).
+     */
+    public void _routeToSpoke(NetworkAddress sourceSpoke, NetworkAddress to, BigInteger value, byte[] data) {
+        Context.require(value.compareTo(BigInteger.ZERO) >= 0, "Amount needs to be positive");
+        NetworkAddress spokeAddress = connectedSpoke(to);
+        changeSpokeSupply(sourceSpoke, value.negate());
+        changeSpokeSupply(spokeAddress, value);
+        sendToSpoke(spokeAddress, to, to, value, data);
+    }
+
+    /**
+     * Rollback of a transfer to {@code to}, in compact form when enabled, see {@link #setCompactRollback(boolean)}.
+     */
+    private byte[] rollbackMessage(NetworkAddress to, BigInteger value) {
+        if (isCompactRollback()) {
+            return HubTokenMessages.xCrossTransferRevertCompact(to.toCompactBytes(networkIds), value);
+        }
+        return HubTokenMessages.xCrossTransferRevert(to.toString(), value);
+    }
+
+    private NetworkAddress connectedSpoke(NetworkAddress address) {
+        NetworkAddress spokeAddress = spokeContracts.get(address.net());
+        Context.require(spokeAddress != null, address.net() + " is not yet connected");
+        return spokeAddress;
+    }
+
+    private void sendToSpoke(NetworkAddress spokeAddress, NetworkAddress from, NetworkAddress to, BigInteger value, byte[] data) {
         data = (data == null) ? new byte[0] : data;
-        byte[] rollback = HubTokenMessages.xCrossTransferRevert(to.toString(), value);
+        byte[] rollback = rollbackMessage(to, value);
         byte[] callData = HubTokenMessages.xCrossTransfer(from.toString(), to.toString(), value, data);
 
-        String btpTargetAddress = new ProtocolPrefixNetworkAddress(spokeAddress.net(), spokeAddress.account()).toString();
+        // Transfers with data call the receiver on the spoke, which could fail the batch of everyone else
+        if (data.length == 0 && isNetting(spokeAddress.net())) {
+            queueTransfer(spokeAddress, callData, rollback);
+            return;
+        }
+        sendCallMessage(spokeAddress, callData, rollback);
+        XTransfer(BigInteger.ZERO, from.toString(), to.toString(), value, data);
+    }
+
+    /**
+     * Emits XTransfer for a queued xCrossTransfer message once it is sent.
+     */
+    private void emitXTransfer(byte[] callData) {
+        ObjectReader reader = Context.newByteArrayObjectReader("RLPn", callData);
+        reader.beginList();
+        reader.readString();
+        String from = reader.readString();
+        String to = reader.readString();
+        BigInteger value = reader.readBigInteger();
+        byte[] data = reader.readByteArray();
+        reader.end();
+        XTransfer(BigInteger.ZERO, from, to, value, data);
+    }
+
+    /**
+     * Changes the supply on a spoke along with the total.
+     */
+    protected void addCrossChainSupply(NetworkAddress spokeAddress, BigInteger delta) {
+        changeSpokeSupply(spokeAddress, delta);
+        BigInteger total = crossChainSupplyTotal.get();
+        if (total != null) {
+            crossChainSupplyTotal.set(total.add(delta));
+        }
+    }
+
+    /**
+     * Changes the supply on a spoke, and the sum of a running recompute if the spoke
+     * was already counted by it. The total is left as is.
+     */
+    private void changeSpokeSupply(NetworkAddress spokeAddress, BigInteger delta) {
+        String key = spokeAddress.toString();
+        BigInteger newSupply = crossChainSupply.getOrDefault(key, BigInteger.ZERO).add(delta);
+        Context.require(newSupply.compareTo(BigInteger.ZERO) >= 0);
+        crossChainSupply.set(key, newSupply.signum() == 0 ? null : newSupply);
+
+        BigInteger sum = supplyCheckSum.get();
+        if (sum != null && supplyCheckRound.get().equals(supplyCheckedRound.get(key))) {
+            supplyCheckSum.set(sum.add(delta));
+        }
+    }
+
+    private void queueTransfer(NetworkAddress spokeAddress, byte[] callData, byte[] rollback) {
+        String net = spokeAddress.net();
+        ArrayDB<byte[]> calls = pendingCalls(net);
+        calls.add(callData);
+        pendingRollbacks(net).add(rollback);
+
+        BigInteger height = BigInteger.valueOf(Context.getBlockHeight());
+        BigInteger since = pendingSince.get(net);
+        if (since == null) {
+            since = height;
+            pendingSince.set(net, since);
+            pendingNets.add(net);
+        }
+
+        if (calls.size() >= nettingMaxSize.getOrDefault(net, DEFAULT_NETTING_MAX_SIZE).intValue()
+            || isPendingExpired(net, since, height)) {
+            sendPending(spokeAddress);
+        }
+    }
+
+    private boolean isNetting(String net) {
+        return Boolean.TRUE.equals(nettingEnabled.get(net));
+    }
+
+    private boolean isPendingExpired(String net, BigInteger since, BigInteger height) {
+        return height.subtract(since).compareTo(nettingMaxBlocks.getOrDefault(net, DEFAULT_NETTING_MAX_BLOCKS)) >= 0;
+    }
+
+    /**
+     * Sends the queues whose oldest transfer has reached the age limit, so a queue is not
+     * held back until the next transfer to its own spoke.
+     */
+    private void sendExpiredPending() {
+        int count = pendingNets.size();
+        if (count == 0) {
+            return;
+        }
+
+        BigInteger height = BigInteger.valueOf(Context.getBlockHeight());
+        // Backwards, as sending removes the net by moving the last one into its place
+        for (int i = count - 1; i >= 0; i--) {
+            String net = pendingNets.get(i);
+            if (isPendingExpired(net, pendingSince.get(net), height)) {
+                sendPending(spokeContracts.get(net));
+            }
+        }
+    }
+
+    private void removePendingNet(String net) {
+        String last = pendingNets.pop();
+        if (last.equals(net)) {
+            return;
+        }
+        int count = pendingNets.size();
+        for (int i = 0; i < count; i++) {
+            if (pendingNets.get(i).equals(net)) {
+                pendingNets.set(i, last);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sends the queued transfers to a spoke as one batch, with a batch of their rollbacks.
+     * The batch succeeds or fails as a whole on the spoke, and a failed batch refunds every
+     * transfer in it.
+     */
+    private void sendPending(NetworkAddress spokeAddress) {
+        String net = spokeAddress.net();
+        ArrayDB<byte[]> calls = pendingCalls(net);
+        ArrayDB<byte[]> rollbacks = pendingRollbacks(net);
+        int count = calls.size();
+        if (count == 0) {
+            return;
+        }
+
+        byte[][] callList = new byte[count][];
+        byte[][] rollbackList = new byte[count][];
+        for (int i = count - 1; i >= 0; i--) {
+            callList[i] = calls.pop();
+            rollbackList[i] = rollbacks.pop();
+        }
+        pendingSince.set(net, null);
+        removePendingNet(net);
 
+        if (count == 1) {
+            sendCallMessage(spokeAddress, callList[0], rollbackList[0]);
+        } else {
+            sendCallMessage(spokeAddress, HubTokenMessages.batch(callList), HubTokenMessages.batch(rollbackList));
+        }
+        for (byte[] callData : callList) {
+            emitXTransfer(callData);
+        }
+    }
+
+    private void sendCallMessage(NetworkAddress spokeAddress, byte[] callData, byte[] rollback) {
+        String btpTargetAddress = spokeAddress.addProtocolPrefix(ProtocolPrefixNetworkAddress.DEFAULT_PROTOCOL_BTP);
+        ledger.flush();
         Context.call(xCallManager.get(), "sendCallMessage", btpTargetAddress, callData, rollback);
-        XTransfer(BigInteger.ZERO, from.toString(), to.toString(), value, data);
+    }
+
+    private ArrayDB<byte[]> pendingCalls(String net) {
+        return Context.newArrayDB(PENDING_CALLS + net, byte[].class);
+    }
+
+    private ArrayDB<byte[]> pendingRollbacks(String net) {
+        return Context.newArrayDB(PENDING_ROLLBACKS + net, byte[].class);
     }
 
     @Override
     @External
     public void handleCallMessage(String _from, byte[] _data) {
+        ledger.reset();
         Context.require(Context.getCaller().equals(xCallManager.get()));
         HubTokenXCall.process(this, _from, _data);
+        sendExpiredPending();
+        ledger.flush();
     }
 
 }
@@ -18,14 +18,18 @@ package xcall.sample.hubtoken;
 
 import static java.math.BigInteger.TEN;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
 import java.math.BigInteger;
+import java.util.Map;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.AdditionalMatchers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import com.iconloop.score.test.Account;
@@ -121,6 +125,29 @@ class HubTokenTest extends TestBase {
         verify(xCall.mock).sendCallMessage(Mockito.eq(new ProtocolPrefixNetworkAddress(ethereumSpokeAddress.net(), ethereumSpokeAddress.account()).toString()), AdditionalMatchers.aryEq(expectedCallData), AdditionalMatchers.aryEq(expectedRollbackData));
    }
 
+   @Test
+   void crossTransfer_UnconnectedNet_LeavesNoChanges() {
+        // Arrange
+        Account alice = sm.createAccount();
+        Account bob = sm.createAccount();
+        NetworkAddress charlie = new NetworkAddress("1.AVAX", "0x32");
+        BigInteger amount = BigInteger.TWO.pow(18);
+        addBalance(alice, amount);
+
+        // Act
+        // Burns from alice before finding no spoke for the net
+        assertThrows(AssertionError.class, () ->
+            tokenScore.invoke(alice, "crossTransfer", charlie.toString(), amount, new byte[0]));
+        tokenScore.invoke(alice, "crossTransfer", new NetworkAddress(ICON_NID, bob.getAddress()).toString(), amount, new byte[0]);
+
+        // Assert
+        assertEquals(BigInteger.ZERO, balanceOf(alice));
+        assertEquals(amount, balanceOf(bob));
+        assertEquals(BigInteger.ZERO, balanceOf(charlie));
+        assertEquals(totalSupply, tokenScore.call("totalSupply"));
+        assertEquals(totalSupply, tokenScore.call("xTotalSupply"));
+   }
+
    @Test
    void crossTransfer_spokeToICONUser() {
         // Arrange
@@ -191,12 +218,54 @@ class HubTokenTest extends TestBase {
         assertEquals(BigInteger.ZERO, tokenScore.call("xSupply", bscSpokeAddress.toString()));
    }
 
+   @Test
+   void crossTransfer_ICONUserToSpoke_compactRollback() {
+        // Arrange
+        Account alice = sm.createAccount();
+        NetworkAddress aliceNetworkAddress = new NetworkAddress(ICON_NID, alice.getAddress());
+        NetworkAddress bob = new NetworkAddress(ethNid, "0x" + "ab".repeat(20));
+        ProtocolPrefixNetworkAddress xCallNetworkAddress = new ProtocolPrefixNetworkAddress(ICON_NID,  xCall.getAddress().toString());
+        BigInteger amount = BigInteger.TWO.pow(18);
+        addBalance(alice, amount);
+        tokenScore.invoke(owner, "setCompactRollback", true);
+        byte[] expectedCallData = HubTokenMessages.xCrossTransfer(aliceNetworkAddress.toString(), bob.toString(), amount, new byte[0]);
+        ArgumentCaptor<byte[]> rollback = ArgumentCaptor.forClass(byte[].class);
+        tokenScore.invoke(alice, "crossTransfer", bob.toString(), amount, new byte[0]);
+        verify(xCall.mock).sendCallMessage(Mockito.eq(new ProtocolPrefixNetworkAddress(ethereumSpokeAddress.net(), ethereumSpokeAddress.account()).toString()), AdditionalMatchers.aryEq(expectedCallData), rollback.capture());
+        assertTrue(rollback.getValue().length < HubTokenMessages.xCrossTransferRevert(bob.toString(), amount).length);
+
+        // Act
+        tokenScore.invoke(xCall.account, "handleCallMessage", xCallNetworkAddress.toString(), rollback.getValue());
+
+        // Assert
+        assertEquals(BigInteger.ZERO, balanceOf(alice));
+        assertEquals(amount, balanceOf(bob));
+        assertEquals(totalSupply, tokenScore.call("xTotalSupply"));
+        assertEquals(BigInteger.ZERO, tokenScore.call("xSupply", ethereumSpokeAddress.toString()));
+   }
+
+   @Test
+   void xCrossTransferRevertCompact_OnlyFromXCall() {
+        // Arrange
+        NetworkAddress bob = new NetworkAddress(ethNid, "0x32");
+        tokenScore.invoke(owner, "setCompactRollback", true);
+        tokenScore.invoke(owner, "crossTransfer", bob.toString(), BigInteger.TEN, new byte[0]);
+        ArgumentCaptor<byte[]> rollback = ArgumentCaptor.forClass(byte[].class);
+        verify(xCall.mock).sendCallMessage(Mockito.anyString(), Mockito.any(byte[].class), rollback.capture());
+
+        // Act & Assert
+        assertThrows(AssertionError.class, () ->
+            tokenScore.invoke(xCall.account, "handleCallMessage", ethereumSpokeAddress.toString(), rollback.getValue()));
+        assertEquals(BigInteger.ZERO, balanceOf(bob));
+   }
+
    @Test
    void crossTransfer_SpokeToSpoke() {
         // Arrange
         NetworkAddress alice = new NetworkAddress(bscNid, "0x35");
         NetworkAddress bob = new NetworkAddress(ethNid, "0x32");
         BigInteger amount = BigInteger.TWO.pow(18);
+        tokenScore.invoke(owner, "setHolderIndex", true);
         tokenScore.invoke(owner, "crossTransfer", alice.toString(), amount, new byte[0]);
 
         byte[] expectedCallData = HubTokenMessages.xCrossTransfer(bob.toString(), bob.toString(), amount, new byte[0]);
@@ -208,7 +277,9 @@ class HubTokenTest extends TestBase {
 
         // Assert
         assertEquals(BigInteger.ZERO, balanceOf(alice));
+        // Routed without passing through a balance on the hub
         assertEquals(BigInteger.ZERO, balanceOf(bob));
+        assertEquals(0, tokenScore.call("holderCount"));
         assertEquals(totalSupply, tokenScore.call("xTotalSupply"));
         assertEquals(amount, tokenScore.call("xSupply", ethereumSpokeAddress.toString()));
         assertEquals(BigInteger.ZERO, tokenScore.call("xSupply", bscSpokeAddress.toString()));
@@ -238,6 +309,186 @@ class HubTokenTest extends TestBase {
         verify(xCall.mock).sendCallMessage(Mockito.eq(new ProtocolPrefixNetworkAddress(ethereumSpokeAddress.net(), ethereumSpokeAddress.account()).toString()), AdditionalMatchers.aryEq(expectedCallData), AdditionalMatchers.aryEq(expectedRollbackData));
    }
 
+   @Test
+   void crossTransfer_ICONUserToSpoke_netting() {
+        // Arrange
+        Account alice = sm.createAccount();
+        NetworkAddress aliceNetworkAddress = new NetworkAddress(ICON_NID, alice.getAddress());
+        NetworkAddress bob = new NetworkAddress(ethNid, "0x32");
+        NetworkAddress charlie = new NetworkAddress(ethNid, "0x33");
+        BigInteger amount = BigInteger.TWO.pow(18);
+        addBalance(alice, amount.multiply(BigInteger.TWO));
+        tokenScore.invoke(owner, "setBatchMessages", ethNid, true);
+        tokenScore.invoke(owner, "setNetting", ethNid, true, BigInteger.TEN, BigInteger.TEN);
+
+        byte[] expectedCallData = HubTokenMessages.batch(
+            HubTokenMessages.xCrossTransfer(aliceNetworkAddress.toString(), bob.toString(), amount, new byte[0]),
+            HubTokenMessages.xCrossTransfer(aliceNetworkAddress.toString(), charlie.toString(), amount, new byte[0]));
+        byte[] expectedRollbackData = HubTokenMessages.batch(
+            HubTokenMessages.xCrossTransferRevert(bob.toString(), amount),
+            HubTokenMessages.xCrossTransferRevert(charlie.toString(), amount));
+
+        // Act
+        tokenScore.invoke(alice, "crossTransfer", bob.toString(), amount, new byte[0]);
+        tokenScore.invoke(alice, "crossTransfer", charlie.toString(), amount, new byte[0]);
+        assertEquals(BigInteger.TWO, tokenScore.call("pendingTransfers", ethNid));
+        assertEquals(false, tokenScore.call("isTransferDue", ethNid));
+        verify(tokenSpy, Mockito.never()).XTransfer(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        sm.getBlock().increase(10);
+        assertEquals(true, tokenScore.call("isTransferDue", ethNid));
+        tokenScore.invoke(alice, "flushTransfers", ethNid);
+
+        // Assert
+        assertEquals(BigInteger.ZERO, balanceOf(alice));
+        assertEquals(BigInteger.ZERO, tokenScore.call("pendingTransfers", ethNid));
+        assertEquals(amount.multiply(BigInteger.TWO), tokenScore.call("xSupply", ethereumSpokeAddress.toString()));
+        verify(xCall.mock).sendCallMessage(Mockito.eq(new ProtocolPrefixNetworkAddress(ethereumSpokeAddress.net(), ethereumSpokeAddress.account()).toString()), AdditionalMatchers.aryEq(expectedCallData), AdditionalMatchers.aryEq(expectedRollbackData));
+        verify(tokenSpy).XTransfer(BigInteger.ZERO, aliceNetworkAddress.toString(), bob.toString(), amount, new byte[0]);
+        verify(tokenSpy).XTransfer(BigInteger.ZERO, aliceNetworkAddress.toString(), charlie.toString(), amount, new byte[0]);
+   }
+
+   @Test
+   void crossTransfer_ICONUserToSpoke_nettingWithData() {
+        // Arrange
+        Account alice = sm.createAccount();
+        NetworkAddress aliceNetworkAddress = new NetworkAddress(ICON_NID, alice.getAddress());
+        NetworkAddress bob = new NetworkAddress(ethNid, "0x32");
+        BigInteger amount = BigInteger.TWO.pow(18);
+        byte[] data = "test".getBytes();
+        addBalance(alice, amount);
+        tokenScore.invoke(owner, "setBatchMessages", ethNid, true);
+        tokenScore.invoke(owner, "setNetting", ethNid, true, BigInteger.TEN, BigInteger.TEN);
+
+        byte[] expectedCallData = HubTokenMessages.xCrossTransfer(aliceNetworkAddress.toString(), bob.toString(), amount, data);
+        byte[] expectedRollbackData = HubTokenMessages.xCrossTransferRevert(bob.toString(), amount);
+
+        // Act
+        tokenScore.invoke(alice, "crossTransfer", bob.toString(), amount, data);
+
+        // Assert
+        // Sent on its own, a failing receiver only reverts this transfer
+        assertEquals(BigInteger.ZERO, tokenScore.call("pendingTransfers", ethNid));
+        verify(xCall.mock).sendCallMessage(Mockito.eq(new ProtocolPrefixNetworkAddress(ethereumSpokeAddress.net(), ethereumSpokeAddress.account()).toString()), AdditionalMatchers.aryEq(expectedCallData), AdditionalMatchers.aryEq(expectedRollbackData));
+        verify(tokenSpy).XTransfer(Mockito.eq(BigInteger.ZERO), Mockito.eq(aliceNetworkAddress.toString()), Mockito.eq(bob.toString()), Mockito.eq(amount), AdditionalMatchers.aryEq(data));
+   }
+
+   @Test
+   void setNetting_RequiresBatchSpoke() {
+        // Act & Assert
+        assertThrows(AssertionError.class, () ->
+            tokenScore.invoke(owner, "setNetting", bscNid, true, BigInteger.TEN, BigInteger.TEN));
+        tokenScore.invoke(owner, "setBatchMessages", bscNid, true);
+        tokenScore.invoke(owner, "setNetting", bscNid, true, BigInteger.TEN, BigInteger.TEN);
+        assertThrows(AssertionError.class, () -> tokenScore.invoke(owner, "setBatchMessages", bscNid, false));
+        assertEquals(false, ((Map<?, ?>) tokenScore.call("getNetting", ethNid)).get("enabled"));
+        assertEquals(true, ((Map<?, ?>) tokenScore.call("getNetting", bscNid)).get("enabled"));
+   }
+
+   @Test
+   void crossTransfer_ICONUserToSpoke_nettingExpiredByOtherTraffic() {
+        // Arrange
+        Account alice = sm.createAccount();
+        NetworkAddress aliceNetworkAddress = new NetworkAddress(ICON_NID, alice.getAddress());
+        NetworkAddress bob = new NetworkAddress(ethNid, "0x32");
+        NetworkAddress charlie = new NetworkAddress(bscNid, "0x33");
+        BigInteger amount = BigInteger.TWO.pow(18);
+        addBalance(alice, amount.multiply(BigInteger.TWO));
+        tokenScore.invoke(owner, "setBatchMessages", ethNid, true);
+        tokenScore.invoke(owner, "setNetting", ethNid, true, BigInteger.TEN, BigInteger.TEN);
+        tokenScore.invoke(alice, "crossTransfer", bob.toString(), amount, new byte[0]);
+
+        byte[] expectedCallData = HubTokenMessages.xCrossTransfer(aliceNetworkAddress.toString(), bob.toString(), amount, new byte[0]);
+        byte[] expectedRollbackData = HubTokenMessages.xCrossTransferRevert(bob.toString(), amount);
+
+        // Act
+        sm.getBlock().increase(10);
+        tokenScore.invoke(alice, "crossTransfer", charlie.toString(), amount, new byte[0]);
+
+        // Assert
+        assertEquals(BigInteger.ZERO, tokenScore.call("pendingTransfers", ethNid));
+        verify(xCall.mock).sendCallMessage(Mockito.eq(new ProtocolPrefixNetworkAddress(ethereumSpokeAddress.net(), ethereumSpokeAddress.account()).toString()), AdditionalMatchers.aryEq(expectedCallData), AdditionalMatchers.aryEq(expectedRollbackData));
+        verify(tokenSpy).XTransfer(BigInteger.ZERO, aliceNetworkAddress.toString(), bob.toString(), amount, new byte[0]);
+   }
+
+   @Test
+   void recomputeCrossChainSupply() {
+        // Arrange
+        NetworkAddress alice = new NetworkAddress(ethNid, "0x32");
+        NetworkAddress bob = new NetworkAddress(bscNid, "0x35");
+        BigInteger amount = BigInteger.TWO.pow(18);
+        tokenScore.invoke(owner, "crossTransfer", alice.toString(), amount, new byte[0]);
+        tokenScore.invoke(owner, "crossTransfer", bob.toString(), amount, new byte[0]);
+
+        // Act
+        tokenScore.invoke(owner, "recomputeCrossChainSupply", 1);
+        tokenScore.invoke(owner, "recomputeCrossChainSupply", 1);
+
+        // Assert
+        assertEquals(totalSupply, tokenScore.call("xTotalSupply"));
+        verify(tokenSpy).CrossChainSupplyRecomputed(amount.multiply(BigInteger.TWO), amount.multiply(BigInteger.TWO));
+   }
+
+   @Test
+   void addChain_RejectsConnectedNet() {
+        // Act & Assert
+        assertThrows(AssertionError.class, () -> tokenScore.invoke(owner, "addChain", ethereumSpokeAddress.toString()));
+        assertThrows(AssertionError.class, () -> tokenScore.invoke(owner, "addChain", new NetworkAddress(ethNid, "0x3").toString()));
+        assertEquals(2, ((String[]) tokenScore.call("getConnectedChains")).length);
+   }
+
+   @Test
+   void updateChain_MovesSupplyToNewSpoke() {
+        // Arrange
+        NetworkAddress alice = new NetworkAddress(ethNid, "0x32");
+        Account bob = sm.createAccount();
+        NetworkAddress newSpokeAddress = new NetworkAddress(ethNid, "0x3");
+        BigInteger amount = BigInteger.TWO.pow(18);
+        tokenScore.invoke(owner, "crossTransfer", alice.toString(), amount, new byte[0]);
+
+        // Act
+        tokenScore.invoke(owner, "updateChain", newSpokeAddress.toString());
+
+        // Assert
+        String[] chains = (String[]) tokenScore.call("getConnectedChains");
+        assertEquals(newSpokeAddress.toString(), chains[0]);
+        assertEquals(2, chains.length);
+        assertEquals(BigInteger.ZERO, tokenScore.call("xSupply", ethereumSpokeAddress.toString()));
+        assertEquals(amount, tokenScore.call("xSupply", newSpokeAddress.toString()));
+        assertEquals(totalSupply, tokenScore.call("xTotalSupply"));
+
+        byte[] msg = HubTokenMessages.xCrossTransfer(alice.toString(), new NetworkAddress(ICON_NID, bob.getAddress()).toString(), amount, new byte[0]);
+        assertThrows(AssertionError.class, () ->
+            tokenScore.invoke(xCall.account, "handleCallMessage", ethereumSpokeAddress.toString(), msg));
+        tokenScore.invoke(xCall.account, "handleCallMessage", newSpokeAddress.toString(), msg);
+        assertEquals(amount, balanceOf(bob));
+        assertEquals(BigInteger.ZERO, tokenScore.call("xSupply", newSpokeAddress.toString()));
+   }
+
+   @Test
+   void updateChain_RequiresConnectedNet() {
+        // Act & Assert
+        assertThrows(AssertionError.class, () -> tokenScore.invoke(owner, "updateChain", "1.AVAX/0x3"));
+        assertThrows(AssertionError.class, () -> tokenScore.invoke(owner, "updateChain", ethereumSpokeAddress.toString()));
+        assertThrows(AssertionError.class, () -> tokenScore.invoke(sm.createAccount(), "updateChain", new NetworkAddress(ethNid, "0x3").toString()));
+   }
+
+   @Test
+   void xCrossTransfer_encodedSize() {
+        // Arrange
+        Account alice = sm.createAccount();
+        NetworkAddress aliceNetworkAddress = new NetworkAddress(ICON_NID, alice.getAddress());
+        NetworkAddress bob = new NetworkAddress(ethNid, "0x32");
+        BigInteger amount = BigInteger.TWO.pow(200);
+        byte[] data = new byte[60];
+
+        // Act
+        byte[] msg = HubTokenMessages.xCrossTransfer(aliceNetworkAddress.toString(), bob.toString(), amount, data);
+        int size = HubTokenMessages.xCrossTransferEncodedSize(aliceNetworkAddress.toString(), bob.toString(), amount, data);
+
+        // Assert
+        assertEquals(msg.length, size);
+   }
+
     void addBalance(Account account, BigInteger amount) {
         tokenScore.invoke(owner, "transfer", account.getAddress(), amount, new byte[0]);
     }
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.sample.spoketoken;
+
+import score.Address;
+import score.DictDB;
+import score.VarDB;
+import scorex.util.ArrayList;
+import scorex.util.HashMap;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-back cache of balances and total supply for the duration of a call.
+ * Values are read from storage once, changed in memory and only the keys whose
+ * value differs from storage are written by {@link #flush()}.
+ * <p>
+ * Holders are keyed by their {@link Address} when native, stored in {@code nativeBalances},
+ * and by their "net/account" string otherwise, stored in {@code balances}. Native balances
+ * still stored under their string key by older versions are moved on first use, see
+ * {@link #setLegacyNativePrefix(String)}.
+ * <p>
+ * The ledger must be flushed before calling other contracts, which may call back
+ * and read storage, and before the external method returns. Storage is rolled back when
+ * a call reverts but this cache is not, so external methods changing balances start
+ * with {@link #reset()}.
+ */
+public class BalanceLedger {
+    private final DictDB<Address, BigInteger> nativeBalances;
+    private final DictDB<String, BigInteger> balances;
+    private final VarDB<BigInteger> totalSupply;
+    private String legacyNativePrefix;
+    private HolderIndex holderIndex;
+    private String nativePrefix;
+
+    private final Map<Object, Entry> entries = new HashMap<>();
+    private final List<Entry> loaded = new ArrayList<>();
+    private BigInteger storedSupply;
+    private BigInteger supply;
+
+    private static class Entry {
+        final Object key;
+        final BigInteger stored;
+        BigInteger current;
+        // String key of a native balance not migrated yet
+        String legacyKey;
+
+        Entry(Object key, BigInteger stored) {
+            this.key = key;
+            this.stored = stored;
+            this.current = stored;
+        }
+    }
+
+    public BalanceLedger(DictDB<Address, BigInteger> nativeBalances, DictDB<String, BigInteger> balances, VarDB<BigInteger> totalSupply) {
+        this.nativeBalances = nativeBalances;
+        this.balances = balances;
+        this.totalSupply = totalSupply;
+    }
+
+    /**
+     * Looks up native holders missing from the native layout under "{@code prefix}hx...",
+     * null once every native balance has been migrated.
+     */
+    public void setLegacyNativePrefix(String prefix) {
+        this.legacyNativePrefix = prefix;
+    }
+
+    /**
+     * Keeps {@code index} up to date on flush, adding holders whose balance becomes positive and removing
+     * the ones whose balance becomes zero. Native holders are listed as "{@code nativePrefix}hx...".
+     * Null to stop updating it.
+     */
+    public void setHolderIndex(HolderIndex index, String nativePrefix) {
+        this.holderIndex = index;
+        this.nativePrefix = nativePrefix;
+    }
+
+    /**
+     * Key of a holder in the holder index.
+     */
+    public String holderKey(Object key) {
+        return key instanceof Address ? nativePrefix + key : (String) key;
+    }
+
+    /**
+     * Balance of a native holder ({@link Address}) or a foreign holder ("net/account" string).
+     */
+    public BigInteger balanceOf(Object key) {
+        return entry(key).current;
+    }
+
+    public void setBalance(Object key, BigInteger value) {
+        entry(key).current = value;
+    }
+
+    public void addBalance(Object key, BigInteger delta) {
+        Entry entry = entry(key);
+        entry.current = entry.current.add(delta);
+    }
+
+    /**
+     * Balance in storage, without caching it. For read only methods, which run with a flushed ledger.
+     */
+    public BigInteger storedBalanceOf(Object key) {
+        if (key instanceof Address) {
+            BigInteger balance = nativeBalances.get((Address) key);
+            if (balance == null && legacyNativePrefix != null) {
+                balance = balances.get(legacyNativePrefix + key);
+            }
+            return balance == null ? BigInteger.ZERO : balance;
+        }
+        return balances.getOrDefault((String) key, BigInteger.ZERO);
+    }
+
+    /**
+     * Moves the balance of native holder {@code key} from its legacy string key to the native layout,
+     * deleting the legacy entry. Returns whether anything was moved. For use with a flushed ledger.
+     */
+    public boolean migrate(Address key) {
+        if (legacyNativePrefix == null || nativeBalances.get(key) != null) {
+            return false;
+        }
+        String legacyKey = legacyNativePrefix + key;
+        BigInteger balance = balances.get(legacyKey);
+        if (balance == null) {
+            return false;
+        }
+        balances.set(legacyKey, null);
+        nativeBalances.set(key, balance.signum() == 0 ? null : balance);
+        return true;
+    }
+
+    /**
+     * Deletes the stored entries of {@code key} holding a zero balance, left by older versions.
+     * Returns whether anything was deleted. For use with a flushed ledger.
+     */
+    public boolean pruneZero(Object key) {
+        boolean pruned = false;
+        if (key instanceof Address) {
+            BigInteger balance = nativeBalances.get((Address) key);
+            if (balance != null && balance.signum() == 0) {
+                nativeBalances.set((Address) key, null);
+                pruned = true;
+            }
+            if (legacyNativePrefix != null) {
+                pruned |= pruneZero(balances, legacyNativePrefix + key);
+            }
+            return pruned;
+        }
+        return pruneZero(balances, (String) key);
+    }
+
+    private static boolean pruneZero(DictDB<String, BigInteger> db, String key) {
+        BigInteger balance = db.get(key);
+        if (balance == null || balance.signum() != 0) {
+            return false;
+        }
+        db.set(key, null);
+        return true;
+    }
+
+    public BigInteger totalSupply() {
+        if (supply == null) {
+            storedSupply = totalSupply.getOrDefault(BigInteger.ZERO);
+            supply = storedSupply;
+        }
+        return supply;
+    }
+
+    public void addTotalSupply(BigInteger delta) {
+        supply = totalSupply().add(delta);
+    }
+
+    /**
+     * Writes the net changes since the last flush and clears the cache.
+     */
+    public void flush() {
+        int count = loaded.size();
+        for (int i = 0; i < count; i++) {
+            Entry entry = loaded.get(i);
+            // Zero balances are deleted rather than stored
+            BigInteger value = entry.current.signum() == 0 ? null : entry.current;
+            if (entry.legacyKey != null) {
+                balances.set(entry.legacyKey, null);
+                nativeBalances.set((Address) entry.key, value);
+            } else if (!entry.stored.equals(entry.current)) {
+                if (entry.key instanceof Address) {
+                    nativeBalances.set((Address) entry.key, value);
+                } else {
+                    balances.set((String) entry.key, value);
+                }
+            }
+
+            if (holderIndex != null && entry.stored.signum() != entry.current.signum()) {
+                if (value == null) {
+                    holderIndex.remove(holderKey(entry.key));
+                } else {
+                    holderIndex.add(holderKey(entry.key));
+                }
+            }
+        }
+
+        if (supply != null && !supply.equals(storedSupply)) {
+            totalSupply.set(supply);
+        }
+        reset();
+    }
+
+    /**
+     * Drops the cache without writing it, including changes left behind by a call that reverted.
+     */
+    public void reset() {
+        entries.clear();
+        loaded.clear();
+        storedSupply = null;
+        supply = null;
+    }
+
+    private Entry entry(Object key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry;
+        }
+
+        if (key instanceof Address) {
+            BigInteger stored = nativeBalances.get((Address) key);
+            if (stored == null && legacyNativePrefix != null) {
+                String legacyKey = legacyNativePrefix + key;
+                stored = balances.get(legacyKey);
+                entry = new Entry(key, stored == null ? BigInteger.ZERO : stored);
+                entry.legacyKey = stored == null ? null : legacyKey;
+            } else {
+                entry = new Entry(key, stored == null ? BigInteger.ZERO : stored);
+            }
+        } else {
+            entry = new Entry(key, balances.getOrDefault((String) key, BigInteger.ZERO));
+        }
+
+        entries.put(key, entry);
+        loaded.add(entry);
+        return entry;
+    }
+}
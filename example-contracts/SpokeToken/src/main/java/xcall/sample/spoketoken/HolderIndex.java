@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.sample.spoketoken;
+
+import score.ArrayDB;
+import score.Context;
+import score.DictDB;
+
+/**
+ * Iterable set of holders by their "net/account" string.
+ * Holders are kept in an array with their position in a dict, removal moves the last holder
+ * into the freed position, so adding and removing cost the same for any number of holders.
+ * Removals reorder the array, pages read in different blocks can skip or repeat holders.
+ */
+public class HolderIndex {
+    private final ArrayDB<String> holders;
+    // Position in holders plus one
+    private final DictDB<String, Integer> positions;
+
+    public HolderIndex(String id) {
+        this.holders = Context.newArrayDB(id + "_holders", String.class);
+        this.positions = Context.newDictDB(id + "_positions", Integer.class);
+    }
+
+    public int size() {
+        return holders.size();
+    }
+
+    public String get(int index) {
+        return holders.get(index);
+    }
+
+    public boolean contains(String holder) {
+        return positions.get(holder) != null;
+    }
+
+    public void add(String holder) {
+        if (contains(holder)) {
+            return;
+        }
+
+        holders.add(holder);
+        positions.set(holder, holders.size());
+    }
+
+    public void remove(String holder) {
+        Integer position = positions.get(holder);
+        if (position == null) {
+            return;
+        }
+
+        String last = holders.pop();
+        if (!last.equals(holder)) {
+            holders.set(position - 1, last);
+            positions.set(last, position);
+        }
+        positions.set(holder, null);
+    }
+}
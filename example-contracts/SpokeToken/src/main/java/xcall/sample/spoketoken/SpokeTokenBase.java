@@ -27,6 +27,7 @@ public class SpokeTokenBase extends SpokeTokenBasic {
 
         // mint the initial token supply here
         Context.require(_initialSupply.compareTo(BigInteger.ZERO) >= 0);
-        mint(new NetworkAddress(_nid, Context.getCaller()), _initialSupply);
+        mint(nativeAddress(Context.getCaller()), _initialSupply);
+        ledger.flush();
     }
 }
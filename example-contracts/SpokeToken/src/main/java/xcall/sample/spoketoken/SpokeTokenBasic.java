@@ -23,11 +23,15 @@ import score.VarDB;
 import score.annotation.EventLog;
 import score.annotation.External;
 import score.annotation.Optional;
+import scorex.util.ArrayList;
 import xcall.score.lib.interfaces.SpokeToken;
 import xcall.score.lib.interfaces.SpokeTokenXCall;
 import xcall.score.lib.util.NetworkAddress;
+import xcall.score.lib.util.NetworkAddressBatch;
+import xcall.score.lib.util.NetworkIdRegistry;
 
 import java.math.BigInteger;
+import java.util.List;
 
 public abstract class SpokeTokenBasic implements SpokeToken {
     private final static String NAME = "name";
@@ -35,8 +39,15 @@ public abstract class SpokeTokenBasic implements SpokeToken {
     private final static String DECIMALS = "decimals";
     private final static String TOTAL_SUPPLY = "total_supply";
     private final static String BALANCES = "balances";
+    private final static String NATIVE_BALANCES = "native_balances";
+    private final static String NATIVE_BALANCES_MIGRATED = "native_balances_migrated";
     private final static String XCALL_Manager = "xcall_manager";
+    private final static String NETWORK_IDS = "network_ids";
+    private final static String HOLDER_INDEX = "holder_index";
+    private final static String HOLDER_INDEX_ENABLED = "holder_index_enabled";
+    private final static int MAX_HOLDERS_PAGE = 100;
     public static String NATIVE_NID;
+    public static int NATIVE_NET_ID;
 
     static final Address ZERO_ADDRESS = new Address(new byte[Address.LENGTH]);
 
@@ -44,11 +55,21 @@ public abstract class SpokeTokenBasic implements SpokeToken {
     private final VarDB<String> symbol = Context.newVarDB(SYMBOL, String.class);
     private final VarDB<BigInteger> decimals = Context.newVarDB(DECIMALS, BigInteger.class);
     private final VarDB<BigInteger> totalSupply = Context.newVarDB(TOTAL_SUPPLY, BigInteger.class);
+    // Balances of foreign holders by "net/account", and of native holders stored before native_balances
     protected final DictDB<String, BigInteger> balances = Context.newDictDB(BALANCES, BigInteger.class);
+    protected final DictDB<Address, BigInteger> nativeBalances = Context.newDictDB(NATIVE_BALANCES, BigInteger.class);
+    private final VarDB<Boolean> nativeBalancesMigrated = Context.newVarDB(NATIVE_BALANCES_MIGRATED, Boolean.class);
     protected final VarDB<Address> xCallManager = Context.newVarDB(XCALL_Manager, Address.class);
+    protected final NetworkIdRegistry networkIds = new NetworkIdRegistry(NETWORK_IDS);
+    // Optional list of the holders with a positive balance, filled by syncHolders for balances from before it was enabled
+    protected final HolderIndex holderIndex = new HolderIndex(HOLDER_INDEX);
+    private final VarDB<Boolean> holderIndexEnabled = Context.newVarDB(HOLDER_INDEX_ENABLED, Boolean.class);
+    // Balance and supply changes are buffered here and flushed before calls to other contracts and on return
+    protected final BalanceLedger ledger = new BalanceLedger(nativeBalances, balances, totalSupply);
 
     public SpokeTokenBasic(String nid, String _tokenName, String _symbolName, @Optional BigInteger _decimals) {
         NATIVE_NID = nid;
+        NATIVE_NET_ID = networkIds.intern(nid);
         if (this.name.get() == null) {
             _decimals = _decimals == null ? BigInteger.valueOf(18L) : _decimals;
             Context.require(_decimals.compareTo(BigInteger.ZERO) >= 0, "Decimals cannot be less than zero");
@@ -56,7 +77,12 @@ public abstract class SpokeTokenBasic implements SpokeToken {
             this.name.set(ensureNotEmpty(_tokenName));
             this.symbol.set(ensureNotEmpty(_symbolName));
             this.decimals.set(_decimals);
+            this.nativeBalancesMigrated.set(true);
         }
+
+        // Deployments from before native_balances move native balances over on first use
+        ledger.setLegacyNativePrefix(isNativeBalancesMigrated() ? null : nid + "/");
+        updateHolderIndex();
     }
 
     @EventLog(indexed = 3)
@@ -100,14 +126,20 @@ public abstract class SpokeTokenBasic implements SpokeToken {
 
     @External(readonly = true)
     public BigInteger balanceOf(Address _owner) {
-        NetworkAddress address =  new NetworkAddress(NATIVE_NID, _owner);
-        return balances.getOrDefault(address.toString(), BigInteger.ZERO);
+        return ledger.storedBalanceOf(_owner);
     }
 
     @External(readonly = true)
     public BigInteger xBalanceOf(String _owner) {
         NetworkAddress address = NetworkAddress.valueOf(_owner);
-        return balances.getOrDefault(address.toString(), BigInteger.ZERO);
+        Object key;
+        try {
+            key = balanceKey(address);
+        } catch (IllegalArgumentException e) {
+            // A native account that is not an ICON address can not hold a balance
+            return BigInteger.ZERO;
+        }
+        return ledger.storedBalanceOf(key);
     }
 
     @External
@@ -121,28 +153,154 @@ public abstract class SpokeTokenBasic implements SpokeToken {
         return xCallManager.get();
     }
 
+    /**
+     * Deletes zero balances stored by older versions for {@code _holders}, given as "net/account" or
+     * ICON addresses. Holders can not be listed on chain, so they are passed in pages by the caller.
+     */
+    @External
+    public void pruneBalances(String[] _holders) {
+        Context.require(Context.getCaller().equals(Context.getOwner()), "Only owner can prune balances");
+        NetworkAddressBatch holders = NetworkAddress.valueOfAll(_holders, NATIVE_NID);
+        for (int i = 0; i < holders.size(); i++) {
+            ledger.pruneZero(balanceKey(holders.get(i)));
+        }
+    }
+
+    /**
+     * Moves the native balances of {@code _holders} still stored under their "net/account" key by older
+     * versions, in pages by the caller. Balances are also moved when a holder's balance is first changed.
+     */
+    @External
+    public void migrateNativeBalances(Address[] _holders) {
+        Context.require(Context.getCaller().equals(Context.getOwner()), "Only owner can migrate balances");
+        Context.require(!isNativeBalancesMigrated(), "Native balances are already migrated");
+        for (Address holder : _holders) {
+            ledger.migrate(holder);
+        }
+    }
+
+    /**
+     * Stops looking up native balances under their "net/account" key, once every one of them has been
+     * moved with {@link #migrateNativeBalances(Address[])}. Balances still stored there are no longer read.
+     */
+    @External
+    public void completeNativeBalanceMigration() {
+        Context.require(Context.getCaller().equals(Context.getOwner()), "Only owner can complete the migration");
+        nativeBalancesMigrated.set(true);
+        ledger.setLegacyNativePrefix(null);
+    }
+
+    @External(readonly = true)
+    public boolean isNativeBalancesMigrated() {
+        return Boolean.TRUE.equals(nativeBalancesMigrated.get());
+    }
+
+    /**
+     * Starts or stops keeping the holder index up to date. Holders with a balance from before it was
+     * last enabled have to be added with {@link #syncHolders(String[])}.
+     */
+    @External
+    public void setHolderIndex(boolean _enabled) {
+        Context.require(Context.getCaller().equals(Context.getOwner()), "Only owner can set holder index");
+        holderIndexEnabled.set(_enabled);
+        updateHolderIndex();
+    }
+
+    @External(readonly = true)
+    public boolean isHolderIndex() {
+        return Boolean.TRUE.equals(holderIndexEnabled.get());
+    }
+
+    /**
+     * Adds {@code _holders} with a positive balance to the holder index and removes the others, given as
+     * "net/account" or ICON addresses in pages by the caller.
+     */
+    @External
+    public void syncHolders(String[] _holders) {
+        Context.require(Context.getCaller().equals(Context.getOwner()), "Only owner can sync holders");
+        Context.require(isHolderIndex(), "Holder index is not enabled");
+        NetworkAddressBatch holders = NetworkAddress.valueOfAll(_holders, NATIVE_NID);
+        for (int i = 0; i < holders.size(); i++) {
+            Object key = balanceKey(holders.get(i));
+            if (ledger.storedBalanceOf(key).signum() > 0) {
+                holderIndex.add(ledger.holderKey(key));
+            } else {
+                holderIndex.remove(ledger.holderKey(key));
+            }
+        }
+    }
+
+    @External(readonly = true)
+    public int holderCount() {
+        return holderIndex.size();
+    }
+
+    /**
+     * Up to {@code _limit} holders from position {@code _offset} of the holder index, in index order,
+     * as [holder, balance] with the holder as "net/account".
+     */
+    @External(readonly = true)
+    public List<List<Object>> getHolders(int _offset, int _limit) {
+        Context.require(_offset >= 0 && _limit > 0 && _limit <= MAX_HOLDERS_PAGE, "Invalid range");
+        int end = Math.min(holderIndex.size(), _offset + _limit);
+        List<List<Object>> holders = new ArrayList<>();
+        for (int i = _offset; i < end; i++) {
+            String holder = holderIndex.get(i);
+            holders.add(List.of(holder, ledger.storedBalanceOf(balanceKey(NetworkAddress.valueOf(holder)))));
+        }
+        return holders;
+    }
+
     @External
     public void transfer(Address _to, BigInteger _value, @Optional byte[] _data) {
+        ledger.reset();
         transfer(
-            new NetworkAddress(NATIVE_NID, Context.getCaller()),
-            new NetworkAddress(NATIVE_NID, _to),
+            nativeAddress(Context.getCaller()),
+            nativeAddress(_to),
             _value,
             _data);
+        ledger.flush();
     }
 
     @External
     public void hubTransfer(String _to, BigInteger _value, @Optional byte[] _data) {
+        ledger.reset();
         transfer(
-            new NetworkAddress(NATIVE_NID, Context.getCaller()),
+            nativeAddress(Context.getCaller()),
             NetworkAddress.valueOf(_to.toString(), NATIVE_NID),
             _value,
             _data);
+        ledger.flush();
     }
 
+    @External
+    public void transferBatch(Address[] _to, BigInteger[] _values, @Optional byte[] _data) {
+        ledger.reset();
+        NetworkAddress[] to = new NetworkAddress[_to.length];
+        for (int i = 0; i < _to.length; i++) {
+            to[i] = nativeAddress(_to[i]);
+        }
+
+        transferBatch(nativeAddress(Context.getCaller()), to, _values, _data);
+        ledger.flush();
+    }
 
-    public void xHubTransfer(String from, String _to, BigInteger _value, byte[] _data) {
+    @External
+    public void hubTransferBatch(String[] _to, BigInteger[] _values, @Optional byte[] _data) {
+        ledger.reset();
+        NetworkAddressBatch batch = NetworkAddress.valueOfAll(_to, NATIVE_NID);
+        NetworkAddress[] to = new NetworkAddress[batch.size()];
+        for (int i = 0; i < to.length; i++) {
+            to[i] = batch.get(i);
+        }
+
+        transferBatch(nativeAddress(Context.getCaller()), to, _values, _data);
+        ledger.flush();
+    }
+
+    public void xHubTransfer(NetworkAddress from, String _to, BigInteger _value, byte[] _data) {
         transfer(
-            NetworkAddress.valueOf(from),
+            from,
             NetworkAddress.valueOf(_to.toString()),
             _value,
             _data);
@@ -150,39 +308,71 @@ public abstract class SpokeTokenBasic implements SpokeToken {
 
     @External
     public void handleCallMessage(String _from, byte[] _data) {
+        ledger.reset();
         Context.require(Context.getCaller().equals(xCallManager.get()));
         SpokeTokenXCall.process(this, _from, _data);
+        ledger.flush();
     }
 
     protected void transfer(NetworkAddress _from, NetworkAddress _to, BigInteger _value, byte[] _data) {
         Context.require(_value.compareTo(BigInteger.ZERO) >= 0, this.name.get() + ": _value needs to be positive");
-        BigInteger fromBalance = balances.getOrDefault(_from.toString(), BigInteger.ZERO);
+        debit(_from, _value);
+        credit(_from, _to, _value, _data);
+    }
+
+    /**
+     * Same as a transfer to each of {@code _to}, with the sender's balance checked and debited once.
+     */
+    protected void transferBatch(NetworkAddress _from, NetworkAddress[] _to, BigInteger[] _values, byte[] _data) {
+        Context.require(_to.length == _values.length, this.name.get() + ": _to and _values need the same length");
+        BigInteger total = BigInteger.ZERO;
+        for (BigInteger value : _values) {
+            Context.require(value.compareTo(BigInteger.ZERO) >= 0, this.name.get() + ": _value needs to be positive");
+            total = total.add(value);
+        }
+
+        debit(_from, total);
+        for (int i = 0; i < _to.length; i++) {
+            credit(_from, _to[i], _values[i], _data);
+        }
+    }
+
+    private void debit(NetworkAddress _from, BigInteger _value) {
+        Object fromKey = balanceKey(_from);
+        BigInteger fromBalance = ledger.balanceOf(fromKey);
 
         Context.require(fromBalance.compareTo(_value) >= 0, this.name.get() + ": Insufficient balance");
 
-        this.balances.set(_from.toString(), fromBalance.subtract(_value));
-        this.balances.set(_to.toString(), balances.getOrDefault(_to.toString(), BigInteger.ZERO).add(_value));
+        ledger.setBalance(fromKey, fromBalance.subtract(_value));
+    }
+
+    /**
+     * Credits {@code _to} with tokens already taken from {@code _from}, logs the transfer and calls the fallback.
+     */
+    private void credit(NetworkAddress _from, NetworkAddress _to, BigInteger _value, byte[] _data) {
+        ledger.addBalance(balanceKey(_to), _value);
 
         byte[] dataBytes = (_data == null) ? "None".getBytes() : _data;
         if (isNative(_to) && isNative(_from)) {
-            Transfer(Address.fromString(_from.account()), Address.fromString(_to.account()), _value, dataBytes);
+            Transfer(_from.accountAddress(), _to.accountAddress(), _value, dataBytes);
 
         } else {
             HubTransfer(_from.toString(), _to.toString(), _value, dataBytes);
         }
 
-        if (!_to.net().equals(NATIVE_NID)) {
+        if (!isNative(_to)) {
             return;
         }
 
 
-        Address contractAddress = Address.fromString(_to.account());
+        Address contractAddress = _to.accountAddress();
         if (!contractAddress.isContract()) {
             return;
         }
 
+        ledger.flush();
         if (isNative(_from)) {
-            Context.call(contractAddress, "tokenFallback", Address.fromString(_from.account()), _value, dataBytes);
+            Context.call(contractAddress, "tokenFallback", _from.accountAddress(), _value, dataBytes);
         } else {
             Context.call(contractAddress, "xTokenFallback", _from.toString(), _value, dataBytes);
         }
@@ -191,7 +381,7 @@ public abstract class SpokeTokenBasic implements SpokeToken {
     protected void mint(NetworkAddress minter, BigInteger amount) {
         _mint(minter, amount);
         if (isNative(minter)) {
-            Transfer(ZERO_ADDRESS, Address.fromString(minter.account()), amount, "mint".getBytes());
+            Transfer(ZERO_ADDRESS, minter.accountAddress(), amount, "mint".getBytes());
         } else {
             HubTransfer(ZERO_ADDRESS.toString(), minter.toString(), amount, null);
         }
@@ -200,14 +390,14 @@ public abstract class SpokeTokenBasic implements SpokeToken {
     protected void _mint(NetworkAddress minter, BigInteger amount) {
         Context.require(amount.compareTo(BigInteger.ZERO) >= 0, this.name.get() + ": Amount needs to be positive");
 
-        totalSupply.set(totalSupply().add(amount));
-        balances.set(minter.toString(), balances.getOrDefault(minter.toString(), BigInteger.ZERO).add(amount));
+        ledger.addTotalSupply(amount);
+        ledger.addBalance(balanceKey(minter), amount);
     }
 
     protected void burn(NetworkAddress owner, BigInteger amount) {
         _burn(owner, amount);
         if (isNative(owner)) {
-            Transfer(Address.fromString(owner.account()), ZERO_ADDRESS, amount, "mint".getBytes());
+            Transfer(owner.accountAddress(), ZERO_ADDRESS, amount, "mint".getBytes());
         } else {
             HubTransfer(owner.toString(), ZERO_ADDRESS.toString(), amount, null);
         }
@@ -216,15 +406,35 @@ public abstract class SpokeTokenBasic implements SpokeToken {
     protected void _burn(NetworkAddress owner, BigInteger amount) {
         Context.require(!ZERO_ADDRESS.equals(owner), this.name.get() + ": Owner address cannot be zero address");
         Context.require(amount.compareTo(BigInteger.ZERO) >= 0, this.name.get() + ": Amount needs to be positive");
-        BigInteger balance = balances.getOrDefault(owner.toString(), BigInteger.ZERO);
+        Object key = balanceKey(owner);
+        BigInteger balance = ledger.balanceOf(key);
         Context.require(balance.compareTo(amount) >= 0, this.name.get() + ": Insufficient Balance");
 
-        balances.set(owner.toString(), balance.subtract(amount));
-        totalSupply.set(totalSupply().subtract(amount));
+        ledger.setBalance(key, balance.subtract(amount));
+        ledger.addTotalSupply(amount.negate());
+
+    }
+
+    private void updateHolderIndex() {
+        if (isHolderIndex()) {
+            ledger.setHolderIndex(holderIndex, NATIVE_NID + "/");
+        } else {
+            ledger.setHolderIndex(null, null);
+        }
+    }
+
+    protected NetworkAddress nativeAddress(Address address) {
+        return new NetworkAddress(NATIVE_NID, address).withNetId(NATIVE_NET_ID);
+    }
 
+    /**
+     * Key of {@code holder} in the ledger, its Address for native holders and its string otherwise.
+     */
+    protected Object balanceKey(NetworkAddress holder) {
+        return isNative(holder) ? holder.accountAddress() : holder.toString();
     }
 
     protected boolean isNative(NetworkAddress address) {
-        return address.net().equals(NATIVE_NID);
+        return address.isNet(NATIVE_NET_ID, NATIVE_NID);
     }
 }
@@ -18,19 +18,24 @@ package xcall.sample.spoketoken;
 
 import static java.math.BigInteger.TEN;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
 import java.math.BigInteger;
+import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 
 import com.iconloop.score.test.Account;
 import com.iconloop.score.test.Score;
 import com.iconloop.score.test.ServiceManager;
 import com.iconloop.score.test.TestBase;
 
+import score.Address;
+
 import icon.xcall.lib.messages.SpokeTokenMessages;
 // import icon.xcall.lib.util.CrossChainAddress;
 import xcall.score.lib.interfaces.XTokenReceiver;
@@ -189,6 +194,184 @@ class SpokeTokenTest extends TestBase {
         verify(receiverContract.mock).xTokenFallback(alice.toString(), amount, new byte[0]);
     }
 
+    @Test
+    void hubTransfer_XCallUserToICONContract_BalanceReadInFallback() {
+        // Arrange
+        NetworkAddress alice = new NetworkAddress("01.eth", "0x1");
+        BigInteger amount = BigInteger.TWO.pow(18);
+        NetworkAddress receiverContractNetworkAddress = new NetworkAddress(ICON_NID, receiverContract.getAddress().toString());
+        addBalance(alice, amount);
+        BigInteger[] seen = new BigInteger[2];
+        Mockito.doAnswer(invocation -> {
+            seen[0] = balanceOf(receiverContract.account);
+            seen[1] = balanceOf(alice);
+            return null;
+        }).when(receiverContract.mock).xTokenFallback(Mockito.anyString(), Mockito.any(BigInteger.class), Mockito.any(byte[].class));
+
+        // Act
+        byte[] msg = SpokeTokenMessages.xHubTransfer(receiverContractNetworkAddress.toString(), amount, new byte[0]);
+        tokenScore.invoke(xcall, "handleCallMessage", alice.toString(), msg);
+
+        // Assert
+        // The fallback sees the transfer already written
+        assertEquals(amount, seen[0]);
+        assertEquals(BigInteger.ZERO, seen[1]);
+        assertEquals(amount, balanceOf(receiverContract.account));
+        assertEquals(totalSupply, tokenScore.call("totalSupply"));
+    }
+
+    @Test
+    void hubTransfer_XCallUserBatch() {
+        // Arrange
+        NetworkAddress alice = new NetworkAddress("01.eth", "0x1");
+        Account bob = sm.createAccount();
+        Account charlie = sm.createAccount();
+        BigInteger amount = BigInteger.TWO.pow(18);
+        addBalance(alice, amount.multiply(BigInteger.TWO));
+
+        // Act
+        byte[] msg = SpokeTokenMessages.batch(
+            SpokeTokenMessages.xHubTransfer(new NetworkAddress(ICON_NID, bob.getAddress()).toString(), amount, new byte[0]),
+            SpokeTokenMessages.xHubTransfer(new NetworkAddress(ICON_NID, charlie.getAddress()).toString(), amount, new byte[0]));
+        tokenScore.invoke(xcall, "handleCallMessage", alice.toString(), msg);
+
+        // Assert
+        assertEquals(BigInteger.ZERO, balanceOf(alice));
+        assertEquals(amount, balanceOf(bob));
+        assertEquals(amount, balanceOf(charlie));
+        verify(tokenSpy).HubTransfer(alice.toString(), new NetworkAddress(ICON_NID, bob.getAddress()).toString(), amount, new byte[0]);
+        verify(tokenSpy).HubTransfer(alice.toString(), new NetworkAddress(ICON_NID, charlie.getAddress()).toString(), amount, new byte[0]);
+    }
+
+    @Test
+    void transferBatch_ICONUserToICONUsers() {
+        // Arrange
+        Account alice = sm.createAccount();
+        Account bob = sm.createAccount();
+        Account charlie = sm.createAccount();
+        BigInteger amount = BigInteger.TWO.pow(18);
+        addBalance(alice, amount.multiply(BigInteger.TWO));
+
+        // Act
+        tokenScore.invoke(alice, "transferBatch", new Address[]{bob.getAddress(), charlie.getAddress()},
+            new BigInteger[]{amount, amount}, new byte[0]);
+
+        // Assert
+        assertEquals(BigInteger.ZERO, balanceOf(alice));
+        assertEquals(amount, balanceOf(bob));
+        assertEquals(amount, balanceOf(charlie));
+        verify(tokenSpy).Transfer(alice.getAddress(), bob.getAddress(), amount, new byte[0]);
+        verify(tokenSpy).Transfer(alice.getAddress(), charlie.getAddress(), amount, new byte[0]);
+    }
+
+    @Test
+    void hubTransferBatch_ICONUserToXCallUsers() {
+        // Arrange
+        Account alice = sm.createAccount();
+        NetworkAddress bob = new NetworkAddress("01.eth", "0x1");
+        Account charlie = sm.createAccount();
+        BigInteger amount = BigInteger.TWO.pow(18);
+        addBalance(alice, amount.multiply(BigInteger.TWO));
+
+        // Act
+        tokenScore.invoke(alice, "hubTransferBatch", new String[]{bob.toString(), charlie.getAddress().toString()},
+            new BigInteger[]{amount, amount}, new byte[0]);
+
+        // Assert
+        assertEquals(BigInteger.ZERO, balanceOf(alice));
+        assertEquals(amount, balanceOf(bob));
+        assertEquals(amount, balanceOf(charlie));
+        verify(tokenSpy).HubTransfer(new NetworkAddress(ICON_NID, alice.getAddress()).toString(), bob.toString(), amount, new byte[0]);
+        verify(tokenSpy).Transfer(alice.getAddress(), charlie.getAddress(), amount, new byte[0]);
+    }
+
+    @Test
+    void xBalanceOf_ICONUser() {
+        // Arrange
+        Account alice = sm.createAccount();
+        BigInteger amount = BigInteger.TWO.pow(18);
+
+        // Act
+        addBalance(alice, amount);
+
+        // Assert
+        assertEquals(amount, balanceOf(alice));
+        assertEquals(amount, balanceOf(new NetworkAddress(ICON_NID, alice.getAddress())));
+    }
+
+    @Test
+    void xBalanceOf_MalformedICONAccount() {
+        assertEquals(BigInteger.ZERO, balanceOf(new NetworkAddress(ICON_NID, "hx123")));
+        assertEquals(BigInteger.ZERO, balanceOf(new NetworkAddress(ICON_NID, "0x" + "12".repeat(20))));
+    }
+
+    @Test
+    void completeNativeBalanceMigration() {
+        // Arrange
+        Account alice = sm.createAccount();
+        BigInteger amount = BigInteger.TWO.pow(18);
+        addBalance(alice, amount);
+
+        // Act
+        tokenScore.invoke(owner, "completeNativeBalanceMigration");
+
+        // Assert
+        // New deployments never had legacy balances
+        assertEquals(true, tokenScore.call("isNativeBalancesMigrated"));
+        assertEquals(amount, balanceOf(alice));
+        assertThrows(AssertionError.class, () ->
+            tokenScore.invoke(owner, "migrateNativeBalances", (Object) new Address[]{alice.getAddress()}));
+        assertThrows(AssertionError.class, () -> tokenScore.invoke(alice, "completeNativeBalanceMigration"));
+    }
+
+    @Test
+    void pruneBalances_KeepsNonZeroBalances() {
+        // Arrange
+        Account alice = sm.createAccount();
+        Account bob = sm.createAccount();
+        NetworkAddress charlie = new NetworkAddress("01.eth", "0x1");
+        BigInteger amount = BigInteger.TWO.pow(18);
+        addBalance(alice, amount);
+        addBalance(charlie, amount);
+        tokenScore.invoke(alice, "transfer", bob.getAddress(), amount, new byte[0]);
+
+        // Act
+        tokenScore.invoke(owner, "pruneBalances", (Object) new String[]{alice.getAddress().toString(),
+            bob.getAddress().toString(), charlie.toString()});
+
+        // Assert
+        assertEquals(BigInteger.ZERO, balanceOf(alice));
+        assertEquals(amount, balanceOf(bob));
+        assertEquals(amount, balanceOf(charlie));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getHolders_TracksTransfers() {
+        // Arrange
+        Account alice = sm.createAccount();
+        Account bob = sm.createAccount();
+        NetworkAddress charlie = new NetworkAddress("01.eth", "0x1");
+        BigInteger amount = BigInteger.TWO.pow(18);
+        tokenScore.invoke(owner, "setHolderIndex", true);
+        tokenScore.invoke(owner, "syncHolders", (Object) new String[]{owner.getAddress().toString()});
+
+        // Act
+        addBalance(alice, amount);
+        addBalance(charlie, amount);
+        tokenScore.invoke(alice, "transfer", bob.getAddress(), amount, new byte[0]);
+
+        // Assert
+        List<List<Object>> holders = (List<List<Object>>) tokenScore.call("getHolders", 0, 10);
+        assertEquals(3, tokenScore.call("holderCount"));
+        // In index order, charlie took alice's position when her balance reached zero
+        assertEquals(List.of(
+            List.of(new NetworkAddress(ICON_NID, owner.getAddress()).toString(), tokenScore.call("balanceOf", owner.getAddress())),
+            List.of(charlie.toString(), amount),
+            List.of(new NetworkAddress(ICON_NID, bob.getAddress()).toString(), amount)), holders);
+        assertEquals(List.of(holders.get(1), holders.get(2)), tokenScore.call("getHolders", 1, 5));
+    }
+
     void addBalance(Account account, BigInteger amount) {
         tokenScore.invoke(owner, "transfer", account.getAddress(), amount, new byte[0]);
     }
@@ -3,6 +3,8 @@ package xcall.score.lib.interfaces;
 import java.math.BigInteger;
 
 import icon.xcall.lib.annotation.XCall;
+import icon.xcall.lib.annotation.XCallBuffer;
+import xcall.score.lib.util.NetworkAddress;
 import score.annotation.EventLog;
 import score.annotation.External;
 
@@ -45,17 +47,24 @@ public interface HubToken extends SpokeToken {
      * XCall rather than the blockchain.
      */
     @XCall
-    void xCrossTransfer(String from, String _from, String _to, BigInteger _value, byte[] _data);
+    void xCrossTransfer(NetworkAddress from, String _from, String _to, BigInteger _value, @XCallBuffer byte[] _data);
 
     @XCall
-    void xCrossTransferRevert(String from, String _to, BigInteger _value);
+    void xCrossTransferRevert(NetworkAddress from, String _to, BigInteger _value);
+
+    /**
+     * Same as {@link #xCrossTransferRevert} with {@code _to} in its compact form, with the net
+     * given by its id in the hub's network id registry.
+     */
+    @XCall
+    void xCrossTransferRevertCompact(NetworkAddress from, byte[] _to, BigInteger _value);
 
       /**
      * From is a EOA address of a connected chain
      * Uses From to xTransfer the balance on ICON to native address on calling chain.
      */
     @XCall
-    void xWithdraw(String from, BigInteger _value);
+    void xWithdraw(NetworkAddress from, BigInteger _value);
 
     /**
      * (EventLog) Must trigger on any successful token transfers from cross chain addresses.
@@ -1,10 +1,13 @@
 package xcall.score.lib.interfaces;
 
+import score.Address;
 import score.annotation.External;
 import score.annotation.Optional;
 
 import java.math.BigInteger;
 import icon.xcall.lib.annotation.XCall;
+import icon.xcall.lib.annotation.XCallBuffer;
+import xcall.score.lib.util.NetworkAddress;
 import com.iconloop.score.token.irc2.IRC2;
 
 
@@ -25,6 +28,23 @@ public interface SpokeToken extends IRC2 {
     @External
     void hubTransfer(String _to, BigInteger _value, @Optional byte[] _data);
 
+    /**
+     * Transfers {@code _values[i]} amount of tokens to ICON address {@code _to[i]} for every i,
+     * with the same events and {@code tokenFallback} calls as separate transfers.
+     * This function SHOULD throw if the lengths differ or the caller account balance
+     * does not have enough tokens to spend for all of them.
+     */
+    @External
+    void transferBatch(Address[] _to, BigInteger[] _values, @Optional byte[] _data);
+
+    /**
+     * Same as {@code hubTransfer} to every {@code _to[i]} with {@code _values[i]}, where
+     * the caller's balance is checked and updated once for the whole batch.
+     * This function SHOULD throw if any {@code _to} is invalid.
+     */
+    @External
+    void hubTransferBatch(String[] _to, BigInteger[] _values, @Optional byte[] _data);
+
     /**
      * Callable only via XCall service on ICON.
      * Transfers {@code _value} amount of tokens to address {@code _to},
@@ -43,7 +63,7 @@ public interface SpokeToken extends IRC2 {
      * {@code _data} can be empty.
      */
     @XCall
-    void xHubTransfer(String from, String _to, BigInteger _value, byte[] _data);
+    void xHubTransfer(NetworkAddress from, String _to, BigInteger _value, @XCallBuffer byte[] _data);
 
     /**
      * (EventLog) Must trigger on any successful hub token transfers.
@@ -6,23 +6,44 @@ import score.Context;
 import score.ObjectReader;
 import score.ObjectWriter;
 public class NetworkAddress {
+    public static final int UNKNOWN_NET_ID = -1;
     private static final String DELIM_NET="/";
     private static final String DELIM_PROTOCOL="://";
-    String net;
-    String account;
+    // Account kinds of the compact encoding
+    private static final int COMPACT_OPAQUE = 0;
+    private static final int COMPACT_ICON = 1;
+    private static final int COMPACT_EVM = 2;
+    // Set on the kind byte when the net is stored as its id in a NetworkIdRegistry
+    private static final int COMPACT_NET_ID = 0x80;
+    private static final int ICON_ADDRESS_LENGTH = 21;
+    private static final int EVM_ADDRESS_LENGTH = 20;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // Canonical "net/account" form, the parts are cut out of it on first use
+    private final String address;
+    private final int netEnd;
+    private String net;
+    private String account;
+    private int netId = UNKNOWN_NET_ID;
+    private Address accountAddress;
 
     public NetworkAddress(ProtocolPrefixNetworkAddress btpAddress) {
-        this(btpAddress.net(), btpAddress.account());
+        this(btpAddress.networkAddress(), btpAddress.networkAddressNetEnd());
     }
 
     public NetworkAddress(String net, String account) {
+        this(net + DELIM_NET + account, String.valueOf(net).length());
         this.net = net;
         this.account = account;
     }
 
     public NetworkAddress(String net, Address account) {
-        this.net = net;
-        this.account = account.toString();
+        this(net, account.toString());
+        this.accountAddress = account;
+    }
+
+    NetworkAddress(String address, int netEnd) {
+        this.address = address;
+        this.netEnd = netEnd;
     }
 
     public static String addProtocolPrefix(String protocols, String networkAddress) {
@@ -34,16 +55,64 @@ public class NetworkAddress {
     }
 
     public String net() {
+        if (net == null) {
+            net = address.substring(0, netEnd);
+        }
         return net;
     }
 
     public String account() {
+        if (account == null) {
+            account = address.substring(netEnd + DELIM_NET.length());
+        }
         return account;
     }
 
+    /**
+     * The account as an ICON address, for addresses on the native network.
+     */
+    public Address accountAddress() {
+        if (accountAddress == null) {
+            accountAddress = Address.fromString(account());
+        }
+        return accountAddress;
+    }
+
+    /**
+     * Same as net().equals(net), without creating the net string.
+     */
+    public boolean isNet(String net) {
+        return netEnd == net.length() && address.startsWith(net);
+    }
+
+    /**
+     * Id of the net in a {@link NetworkIdRegistry}, or {@link #UNKNOWN_NET_ID} if it was not resolved.
+     */
+    public int netId() {
+        return netId;
+    }
+
+    /**
+     * Sets the registry id of the net, for addresses created with a net whose id is already known.
+     */
+    public NetworkAddress withNetId(int netId) {
+        this.netId = netId;
+        return this;
+    }
+
+    /**
+     * Same as isNet for the net with {@code netId}, compared as ints when the id of this address is known.
+     */
+    public boolean isNet(int netId, String net) {
+        if (this.netId != UNKNOWN_NET_ID) {
+            return this.netId == netId;
+        }
+        return isNet(net);
+    }
+
     @Override
     public String toString() {
-        return net + DELIM_NET + account;
+        return address;
     }
 
     @Override
@@ -52,26 +121,39 @@ public class NetworkAddress {
         if (o == null || getClass() != o.getClass()) return false;
 
         NetworkAddress that = (NetworkAddress) o;
-        return toString().equals(that.toString());
+        return address.equals(that.address);
     }
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return address.hashCode();
     }
 
     public boolean isValid() {
-        return  (!(net == null || net.isEmpty())) &&
-                (!(account == null || account.isEmpty()));
+        return netEnd > 0 && address.length() > netEnd + DELIM_NET.length();
     }
 
+    /**
+     * Parses "[protocols://]net/account" in a single scan. Addresses without a
+     * protocol prefix are kept as is, so no strings are created.
+     */
     public static NetworkAddress parse(String str) {
-        ProtocolPrefixNetworkAddress btpAddress = ProtocolPrefixNetworkAddress.parse(str);
-        if (btpAddress == null) {
+        if (str == null) {
             return null;
         }
 
-        return new NetworkAddress(btpAddress);
+        int protocolsEnd = str.indexOf(DELIM_PROTOCOL);
+        int start = protocolsEnd >= 0 ? protocolsEnd + DELIM_PROTOCOL.length() : 0;
+        int netEnd = str.indexOf(DELIM_NET, start);
+        if (netEnd < 0) {
+            return new NetworkAddress("", str.substring(start));
+        }
+
+        if (start == 0) {
+            return new NetworkAddress(str, netEnd);
+        }
+
+        return new NetworkAddress(str.substring(start), netEnd - start);
     }
 
     public static NetworkAddress valueOf(String str) {
@@ -85,13 +167,44 @@ public class NetworkAddress {
     public static NetworkAddress valueOf(String str, String nativeNid) {
         NetworkAddress address = parse(str);
         Context.require(address != null, "failed to parse NetworkAddress");
-        if (address.net.isEmpty()) {
-            Address.fromString(address.account);
-            address.net = nativeNid;
+        if (address.netEnd == 0) {
+            Address.fromString(address.account());
+            return new NetworkAddress(nativeNid, address.account());
         }
         return address;
     }
 
+    /**
+     * Parses all of {@code strs} in one pass. Entries that fail to parse are listed by the result
+     * instead of reverting, see {@link NetworkAddressParser} to reuse a parser between batches.
+     */
+    public static NetworkAddressBatch parseAll(String[] strs) {
+        return new NetworkAddressParser().parseAll(strs);
+    }
+
+    /**
+     * Same as parseAll, reverting once with the indexes of all invalid entries.
+     */
+    public static NetworkAddressBatch valueOfAll(String[] strs) {
+        return requireValid(new NetworkAddressParser().parseAll(strs));
+    }
+
+    // Accepts Native addresses as well
+    public static NetworkAddressBatch valueOfAll(String[] strs, String nativeNid) {
+        return requireValid(new NetworkAddressParser(nativeNid).parseAll(strs));
+    }
+
+    private static NetworkAddressBatch requireValid(NetworkAddressBatch batch) {
+        if (!batch.allValid()) {
+            StringBuilder message = new StringBuilder("failed to parse NetworkAddress at");
+            for (int index : batch.invalidIndexes()) {
+                message.append(' ').append(index);
+            }
+            Context.revert(message.toString());
+        }
+        return batch;
+    }
+
     public static void writeObject(ObjectWriter writer, NetworkAddress obj) {
         obj.writeObject(writer);
     }
@@ -114,5 +227,154 @@ public class NetworkAddress {
         NetworkAddress.writeObject(writer, this);
         return writer.toByteArray();
     }
-}
 
+    /**
+     * Compact binary form, usable as a DictDB key or an RLP byte string:
+     * a kind byte, the length of the net, the net and then the account.
+     * ICON accounts (hx/cx) are stored as their 21 raw bytes, EVM accounts (0x) as 20 raw bytes
+     * and any other account as its UTF-8 bytes. Only lower case hex accounts are stored as raw
+     * bytes, so decoding always gives back the same string.
+     */
+    public byte[] toCompactBytes() {
+        byte[] net = net().getBytes();
+        Context.require(net.length <= 0xff, "Network id too long");
+        byte[] compact = compactAccount(0, 1 + net.length);
+        compact[1] = (byte) net.length;
+        System.arraycopy(net, 0, compact, 2, net.length);
+        return compact;
+    }
+
+    /**
+     * Same as {@link #toCompactBytes()} with the net replaced by its id in {@code registry},
+     * one byte for ids below 0x80 and two bytes otherwise. The net must be registered.
+     */
+    public byte[] toCompactBytes(NetworkIdRegistry registry) {
+        int id = registry.resolve(this);
+        Context.require(id != UNKNOWN_NET_ID, "Unknown network " + net());
+        if (id < 0x80) {
+            byte[] compact = compactAccount(COMPACT_NET_ID, 1);
+            compact[1] = (byte) id;
+            return compact;
+        }
+
+        byte[] compact = compactAccount(COMPACT_NET_ID, 2);
+        compact[1] = (byte) (0x80 | (id >> 8));
+        compact[2] = (byte) id;
+        return compact;
+    }
+
+    public static NetworkAddress fromCompactBytes(byte[] compact) {
+        Context.require(compact.length >= 2 && (compact[0] & COMPACT_NET_ID) == 0, "Invalid compact NetworkAddress");
+        int netLength = compact[1] & 0xff;
+        Context.require(compact.length >= 2 + netLength, "Invalid compact NetworkAddress");
+        String net = new String(compact, 2, netLength);
+        return new NetworkAddress(net, compactAccount(compact, 2 + netLength));
+    }
+
+    public static NetworkAddress fromCompactBytes(byte[] compact, NetworkIdRegistry registry) {
+        Context.require(compact.length >= 2 && (compact[0] & COMPACT_NET_ID) != 0, "Invalid compact NetworkAddress");
+        int id = compact[1] & 0xff;
+        int at = 2;
+        if (id >= 0x80) {
+            Context.require(compact.length >= 3, "Invalid compact NetworkAddress");
+            id = ((id & 0x7f) << 8) | (compact[2] & 0xff);
+            at = 3;
+        }
+
+        NetworkAddress address = new NetworkAddress(registry.netOf(id), compactAccount(compact, at));
+        address.netId = id;
+        return address;
+    }
+
+    public static void writeCompact(ObjectWriter writer, NetworkAddress obj) {
+        writer.write(obj.toCompactBytes());
+    }
+
+    public static NetworkAddress readCompact(ObjectReader reader) {
+        return fromCompactBytes(reader.readByteArray());
+    }
+
+    /**
+     * Encodes the account after a kind byte and {@code netLength} bytes left for the net.
+     */
+    private byte[] compactAccount(int flags, int netLength) {
+        String account = account();
+        int at = 1 + netLength;
+        if (isHexAccount(account, "hx", ICON_ADDRESS_LENGTH - 1) || isHexAccount(account, "cx", ICON_ADDRESS_LENGTH - 1)) {
+            byte[] compact = new byte[at + ICON_ADDRESS_LENGTH];
+            compact[0] = (byte) (flags | COMPACT_ICON);
+            compact[at++] = (byte) (account.charAt(0) == 'c' ? 1 : 0);
+            fromHex(account, compact, at);
+            return compact;
+        }
+
+        if (isHexAccount(account, "0x", EVM_ADDRESS_LENGTH)) {
+            byte[] compact = new byte[at + EVM_ADDRESS_LENGTH];
+            compact[0] = (byte) (flags | COMPACT_EVM);
+            fromHex(account, compact, at);
+            return compact;
+        }
+
+        byte[] opaque = account.getBytes();
+        byte[] compact = new byte[at + opaque.length];
+        compact[0] = (byte) (flags | COMPACT_OPAQUE);
+        System.arraycopy(opaque, 0, compact, at, opaque.length);
+        return compact;
+    }
+
+    private static String compactAccount(byte[] compact, int at) {
+        int kind = compact[0] & 0xff & ~COMPACT_NET_ID;
+        int accountLength = compact.length - at;
+        if (kind == COMPACT_OPAQUE) {
+            return new String(compact, at, accountLength);
+        } else if (kind == COMPACT_ICON && accountLength == ICON_ADDRESS_LENGTH && (compact[at] & 0xfe) == 0) {
+            return toHex(compact[at] == 0 ? "hx" : "cx", compact, at + 1, ICON_ADDRESS_LENGTH - 1);
+        } else if (kind == COMPACT_EVM && accountLength == EVM_ADDRESS_LENGTH) {
+            return toHex("0x", compact, at, EVM_ADDRESS_LENGTH);
+        }
+
+        Context.revert("Invalid compact NetworkAddress");
+        return null;
+    }
+
+    private static void fromHex(String account, byte[] out, int at) {
+        for (int i = 2; i < account.length(); i += 2) {
+            out[at++] = (byte) ((hexValue(account.charAt(i)) << 4) | hexValue(account.charAt(i + 1)));
+        }
+    }
+
+    private static boolean isHexAccount(String account, String prefix, int length) {
+        if (account.length() != prefix.length() + length * 2 || !account.startsWith(prefix)) {
+            return false;
+        }
+        for (int i = prefix.length(); i < account.length(); i++) {
+            if (hexValue(account.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    private static String toHex(String prefix, byte[] bytes, int offset, int length) {
+        char[] chars = new char[prefix.length() + length * 2];
+        int at = 0;
+        for (; at < prefix.length(); at++) {
+            chars[at] = prefix.charAt(at);
+        }
+        for (int i = offset; i < offset + length; i++) {
+            chars[at++] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[at++] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.score.lib.util;
+
+/**
+ * Result of parsing many network addresses at once, kept as parallel arrays.
+ * Entries that failed to parse are null and their indexes are listed in {@link #invalidIndexes()}.
+ * {@link NetworkAddress} objects are only created when asked for with {@link #get(int)}.
+ */
+public final class NetworkAddressBatch {
+    private final String[] addresses;
+    private final int[] netEnds;
+    private final int[] invalid;
+
+    NetworkAddressBatch(String[] addresses, int[] netEnds, int[] invalid) {
+        this.addresses = addresses;
+        this.netEnds = netEnds;
+        this.invalid = invalid;
+    }
+
+    public int size() {
+        return addresses.length;
+    }
+
+    public boolean allValid() {
+        return invalid.length == 0;
+    }
+
+    public boolean isValid(int index) {
+        return addresses[index] != null;
+    }
+
+    /**
+     * Indexes of the entries that failed to parse, in increasing order.
+     */
+    public int[] invalidIndexes() {
+        return invalid.clone();
+    }
+
+    /**
+     * Canonical "net/account" form of the entry at {@code index}, null if it is invalid.
+     */
+    public String toString(int index) {
+        return addresses[index];
+    }
+
+    public String net(int index) {
+        return addresses[index].substring(0, netEnds[index]);
+    }
+
+    public String account(int index) {
+        return addresses[index].substring(netEnds[index] + 1);
+    }
+
+    /**
+     * Same as get(index).isNet(net), without creating any objects.
+     */
+    public boolean isNet(int index, String net) {
+        String address = addresses[index];
+        return netEnds[index] == net.length() && address.startsWith(net);
+    }
+
+    public NetworkAddress get(int index) {
+        String address = addresses[index];
+        return address == null ? null : new NetworkAddress(address, netEnds[index]);
+    }
+}
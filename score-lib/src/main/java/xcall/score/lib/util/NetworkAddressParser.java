@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.score.lib.util;
+
+/**
+ * Parses and validates many "[protocols://]net/account" strings in one pass.
+ * A parser keeps its scratch space between calls, so one instance can be reused for every batch.
+ * With a native nid, plain ICON addresses are accepted as well, as in
+ * {@link NetworkAddress#valueOf(String, String)}.
+ */
+public class NetworkAddressParser {
+    private static final String DELIM_PROTOCOL = "://";
+    private static final char DELIM_NET = '/';
+
+    private final String nativeNid;
+    private final String nativePrefix;
+    private int[] invalid = new int[8];
+
+    public NetworkAddressParser() {
+        this(null);
+    }
+
+    public NetworkAddressParser(String nativeNid) {
+        this.nativeNid = nativeNid;
+        this.nativePrefix = nativeNid == null ? null : nativeNid + DELIM_NET;
+    }
+
+    public NetworkAddressBatch parseAll(String[] strs) {
+        int count = strs.length;
+        String[] addresses = new String[count];
+        int[] netEnds = new int[count];
+        int invalidCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            String str = strs[i];
+            if (str != null) {
+                int protocolsEnd = str.indexOf(DELIM_PROTOCOL);
+                int start = protocolsEnd >= 0 ? protocolsEnd + DELIM_PROTOCOL.length() : 0;
+                int netEnd = str.indexOf(DELIM_NET, start);
+
+                if (netEnd > start && netEnd + 1 < str.length()) {
+                    addresses[i] = start == 0 ? str : str.substring(start);
+                    netEnds[i] = netEnd - start;
+                    continue;
+                }
+
+                int accountStart = netEnd == start ? start + 1 : start;
+                if (nativeNid != null && netEnd <= start && isIconAddress(str, accountStart)) {
+                    addresses[i] = nativePrefix + str.substring(accountStart);
+                    netEnds[i] = nativeNid.length();
+                    continue;
+                }
+            }
+
+            if (invalidCount == invalid.length) {
+                int[] grown = new int[invalidCount * 2];
+                System.arraycopy(invalid, 0, grown, 0, invalidCount);
+                invalid = grown;
+            }
+            invalid[invalidCount++] = i;
+        }
+
+        int[] invalidIndexes = new int[invalidCount];
+        System.arraycopy(invalid, 0, invalidIndexes, 0, invalidCount);
+        return new NetworkAddressBatch(addresses, netEnds, invalidIndexes);
+    }
+
+    /**
+     * Whether the rest of {@code str} from {@code start} is a hx or cx address, as accepted by Address.fromString.
+     */
+    private static boolean isIconAddress(String str, int start) {
+        if (str.length() - start != 42 || str.charAt(start + 1) != 'x') {
+            return false;
+        }
+
+        char type = str.charAt(start);
+        if (type != 'h' && type != 'c') {
+            return false;
+        }
+
+        for (int i = start + 2; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f') && !(c >= 'A' && c <= 'F')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.score.lib.util;
+
+import score.ArrayDB;
+import score.Context;
+import score.DictDB;
+
+/**
+ * On-chain registry interning network ids such as "0x1.icon" to small integers.
+ * Ids are handed out in order and never change, so they can be embedded in storage keys,
+ * see {@link NetworkAddress#toCompactBytes(NetworkIdRegistry)}.
+ */
+public class NetworkIdRegistry {
+    public static final int MAX_ID = 0x7fff;
+
+    private final ArrayDB<String> nets;
+    private final DictDB<String, Integer> ids;
+
+    public NetworkIdRegistry(String id) {
+        this.nets = Context.newArrayDB(id + "_nets", String.class);
+        this.ids = Context.newDictDB(id + "_ids", Integer.class);
+    }
+
+    /**
+     * Returns the id of {@code net}, registering it if it is not known yet.
+     */
+    public int intern(String net) {
+        Integer id = ids.get(net);
+        if (id != null) {
+            return id;
+        }
+
+        int newId = nets.size();
+        Context.require(newId <= MAX_ID, "Too many networks");
+        nets.add(net);
+        ids.set(net, newId);
+        return newId;
+    }
+
+    /**
+     * Returns the id of {@code net}, or {@link NetworkAddress#UNKNOWN_NET_ID} if it is not registered.
+     */
+    public int idOf(String net) {
+        Integer id = ids.get(net);
+        return id == null ? NetworkAddress.UNKNOWN_NET_ID : id;
+    }
+
+    public String netOf(int id) {
+        Context.require(id >= 0 && id < nets.size(), "Unknown network id");
+        return nets.get(id);
+    }
+
+    public int size() {
+        return nets.size();
+    }
+
+    /**
+     * Looks up the id of the net of {@code address} and keeps it on the address.
+     */
+    public int resolve(NetworkAddress address) {
+        int id = address.netId();
+        if (id == NetworkAddress.UNKNOWN_NET_ID) {
+            id = idOf(address.net());
+            address.withNetId(id);
+        }
+        return id;
+    }
+}
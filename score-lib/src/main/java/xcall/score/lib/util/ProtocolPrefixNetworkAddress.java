@@ -27,41 +27,80 @@ public class ProtocolPrefixNetworkAddress {
     public static final String DELIM_PROTOCOLS="|";
     private static final String DELIM_PROTOCOL="://";
     private static final String DELIM_NET="/";
-    String protocols;
-    String net;
-    String account;
+    // Canonical "protocols://net/account" form, the parts are cut out of it on first use
+    private final String address;
+    private final int protocolsEnd;
+    private final int netEnd;
+    private String protocols;
+    private String net;
+    private String account;
 
     public ProtocolPrefixNetworkAddress(String net, String account) {
         this(DEFAULT_PROTOCOL_BTP, net, account);
     }
 
     public ProtocolPrefixNetworkAddress(String protocols, String net, String account) {
+        this(protocols + DELIM_PROTOCOL + net + DELIM_NET + account,
+            String.valueOf(protocols).length(),
+            String.valueOf(protocols).length() + DELIM_PROTOCOL.length() + String.valueOf(net).length());
         this.protocols = protocols;
         this.net = net;
         this.account = account;
     }
 
     public ProtocolPrefixNetworkAddress(String[] protocols, String net, String account) {
-        this.protocols = protocolsString(protocols);
-        this.net = net;
-        this.account = account;
+        this(protocolsString(protocols), net, account);
+    }
+
+    public ProtocolPrefixNetworkAddress(ProtocolSet protocols, ProtocolRegistry registry, String net, String account) {
+        this(registry.format(protocols), net, account);
+    }
+
+    private ProtocolPrefixNetworkAddress(String address, int protocolsEnd, int netEnd) {
+        this.address = address;
+        this.protocolsEnd = protocolsEnd;
+        this.netEnd = netEnd;
     }
 
     public String protocols() {
+        if (protocols == null) {
+            protocols = address.substring(0, protocolsEnd);
+        }
         return protocols;
     }
 
+    public ProtocolSet protocols(ProtocolRegistry registry) {
+        return registry.parse(protocols());
+    }
+
     public String net() {
+        if (net == null) {
+            net = address.substring(protocolsEnd + DELIM_PROTOCOL.length(), netEnd);
+        }
         return net;
     }
 
     public String account() {
+        if (account == null) {
+            account = address.substring(netEnd + DELIM_NET.length());
+        }
         return account;
     }
 
+    /**
+     * The "net/account" part of the address.
+     */
+    String networkAddress() {
+        return address.substring(protocolsEnd + DELIM_PROTOCOL.length());
+    }
+
+    int networkAddressNetEnd() {
+        return netEnd - protocolsEnd - DELIM_PROTOCOL.length();
+    }
+
     @Override
     public String toString() {
-        return protocols + DELIM_PROTOCOL + net + DELIM_NET + account;
+        return address;
     }
 
     @Override
@@ -70,50 +109,47 @@ public class ProtocolPrefixNetworkAddress {
         if (o == null || getClass() != o.getClass()) return false;
 
         ProtocolPrefixNetworkAddress that = (ProtocolPrefixNetworkAddress) o;
-        return toString().equals(that.toString());
+        return address.equals(that.address);
     }
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return address.hashCode();
     }
 
     public boolean isValid() {
-        return (!(protocols == null || protocols.isEmpty())) &&
-                (!(net == null || net.isEmpty())) &&
-                (!(account == null || account.isEmpty()));
+        return protocolsEnd > 0 &&
+                netEnd > protocolsEnd + DELIM_PROTOCOL.length() &&
+                address.length() > netEnd + DELIM_NET.length();
     }
 
     private static String protocolsString(String[] protocols) {
-        String result = "";
-        int i;
-        for (i = 0; i < protocols.length-1; i++) {
-            result = result + protocols[i] + "|";
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < protocols.length; i++) {
+            if (i > 0) {
+                result.append(DELIM_PROTOCOLS);
+            }
+            result.append(protocols[i]);
         }
-        result = result + protocols[++i];
-        return result;
+        return result.toString();
     }
 
     public static ProtocolPrefixNetworkAddress parse(String str) {
         if (str == null) {
             return null;
         }
-        String protocol = "";
-        String net = "";
-        String contract = "";
-        int protocolIdx = str.indexOf(DELIM_PROTOCOL);
-        if(protocolIdx >= 0) {
-            protocol = str.substring(0, protocolIdx);
-            str = str.substring(protocolIdx + DELIM_PROTOCOL.length());
-        }
-        int netIdx = str.indexOf(DELIM_NET);
-        if (netIdx >= 0) {
-            net = str.substring(0, netIdx);
-            contract = str.substring(netIdx+DELIM_NET.length());
-        } else {
-            contract = str;
+
+        int protocolsEnd = str.indexOf(DELIM_PROTOCOL);
+        int netStart = protocolsEnd >= 0 ? protocolsEnd + DELIM_PROTOCOL.length() : 0;
+        int netEnd = str.indexOf(DELIM_NET, netStart);
+        if (protocolsEnd >= 0 && netEnd >= 0) {
+            return new ProtocolPrefixNetworkAddress(str, protocolsEnd, netEnd);
         }
-        return new ProtocolPrefixNetworkAddress(protocol, net, contract);
+
+        String protocol = protocolsEnd >= 0 ? str.substring(0, protocolsEnd) : "";
+        String net = netEnd >= 0 ? str.substring(netStart, netEnd) : "";
+        String account = netEnd >= 0 ? str.substring(netEnd + DELIM_NET.length()) : str.substring(netStart);
+        return new ProtocolPrefixNetworkAddress(protocol, net, account);
     }
 
     public static ProtocolPrefixNetworkAddress valueOf(String str) {
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.score.lib.util;
+
+import score.ArrayDB;
+import score.Context;
+import score.DictDB;
+
+/**
+ * On-chain registry assigning protocol names such as "btp" to the bits of a {@link ProtocolSet}.
+ * Ids are handed out in order and never change, at most {@link ProtocolSet#MAX_PROTOCOLS}.
+ */
+public class ProtocolRegistry {
+    private final ArrayDB<String> names;
+    private final DictDB<String, Integer> ids;
+
+    public ProtocolRegistry(String id) {
+        this.names = Context.newArrayDB(id + "_names", String.class);
+        this.ids = Context.newDictDB(id + "_ids", Integer.class);
+    }
+
+    /**
+     * Returns the id of {@code protocol}, registering it if it is not known yet.
+     */
+    public int register(String protocol) {
+        Integer id = ids.get(protocol);
+        if (id != null) {
+            return id;
+        }
+
+        Context.require(!protocol.isEmpty() && protocol.indexOf(ProtocolPrefixNetworkAddress.DELIM_PROTOCOLS) < 0,
+            "Invalid protocol " + protocol);
+        int newId = names.size();
+        Context.require(newId < ProtocolSet.MAX_PROTOCOLS, "Too many protocols");
+        names.add(protocol);
+        ids.set(protocol, newId);
+        return newId;
+    }
+
+    /**
+     * Returns the id of {@code protocol}, or -1 if it is not registered.
+     */
+    public int idOf(String protocol) {
+        Integer id = ids.get(protocol);
+        return id == null ? -1 : id;
+    }
+
+    public String nameOf(int id) {
+        Context.require(id >= 0 && id < names.size(), "Unknown protocol id " + id);
+        return names.get(id);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Parses "protocol1|protocol2|..." in a single scan. All protocols must be registered,
+     * an empty string is the empty set, as written by {@link #format(ProtocolSet)}.
+     */
+    public ProtocolSet parse(String protocols) {
+        if (protocols.isEmpty()) {
+            return ProtocolSet.EMPTY;
+        }
+
+        long bits = 0;
+        int start = 0;
+        int length = protocols.length();
+        while (start <= length) {
+            int end = protocols.indexOf(ProtocolPrefixNetworkAddress.DELIM_PROTOCOLS, start);
+            if (end < 0) {
+                end = length;
+            }
+
+            String protocol = protocols.substring(start, end);
+            int id = idOf(protocol);
+            Context.require(id >= 0, "Unknown protocol " + protocol);
+            bits |= 1L << id;
+            start = end + ProtocolPrefixNetworkAddress.DELIM_PROTOCOLS.length();
+        }
+        return ProtocolSet.valueOf(bits);
+    }
+
+    /**
+     * Formats {@code protocols} as "protocol1|protocol2|...", ordered by id.
+     */
+    public String format(ProtocolSet protocols) {
+        StringBuilder result = new StringBuilder();
+        for (int id = protocols.nextId(0); id >= 0; id = protocols.nextId(id + 1)) {
+            if (result.length() > 0) {
+                result.append(ProtocolPrefixNetworkAddress.DELIM_PROTOCOLS);
+            }
+            result.append(nameOf(id));
+        }
+        return result.toString();
+    }
+}
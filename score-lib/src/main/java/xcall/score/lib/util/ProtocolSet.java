@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.score.lib.util;
+
+import score.Context;
+import score.ObjectReader;
+import score.ObjectWriter;
+
+/**
+ * Set of protocols as a bitmask over the ids of a {@link ProtocolRegistry}.
+ * Stored as a single long, so a set of protocols per network takes a few bytes
+ * and containment or intersection is a single bit operation.
+ */
+public final class ProtocolSet {
+    public static final int MAX_PROTOCOLS = 64;
+    public static final ProtocolSet EMPTY = new ProtocolSet(0);
+
+    private final long bits;
+
+    private ProtocolSet(long bits) {
+        this.bits = bits;
+    }
+
+    public static ProtocolSet valueOf(long bits) {
+        return bits == 0 ? EMPTY : new ProtocolSet(bits);
+    }
+
+    public static ProtocolSet of(int id) {
+        checkId(id);
+        return new ProtocolSet(1L << id);
+    }
+
+    public long toLong() {
+        return bits;
+    }
+
+    public boolean isEmpty() {
+        return bits == 0;
+    }
+
+    public int size() {
+        int count = 0;
+        for (long remaining = bits; remaining != 0; remaining &= remaining - 1) {
+            count++;
+        }
+        return count;
+    }
+
+    public boolean contains(int id) {
+        checkId(id);
+        return (bits & (1L << id)) != 0;
+    }
+
+    public boolean containsAll(ProtocolSet other) {
+        return (bits & other.bits) == other.bits;
+    }
+
+    public boolean intersects(ProtocolSet other) {
+        return (bits & other.bits) != 0;
+    }
+
+    public ProtocolSet with(int id) {
+        checkId(id);
+        return valueOf(bits | (1L << id));
+    }
+
+    public ProtocolSet without(int id) {
+        checkId(id);
+        return valueOf(bits & ~(1L << id));
+    }
+
+    public ProtocolSet union(ProtocolSet other) {
+        return valueOf(bits | other.bits);
+    }
+
+    public ProtocolSet intersection(ProtocolSet other) {
+        return valueOf(bits & other.bits);
+    }
+
+    public ProtocolSet difference(ProtocolSet other) {
+        return valueOf(bits & ~other.bits);
+    }
+
+    /**
+     * Lowest id in the set at or after {@code from}, or -1 if there is none.
+     */
+    public int nextId(int from) {
+        for (int id = from; id < MAX_PROTOCOLS; id++) {
+            if ((bits & (1L << id)) != 0) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ProtocolSet that = (ProtocolSet) o;
+        return bits == that.bits;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    public static void writeObject(ObjectWriter writer, ProtocolSet obj) {
+        writer.write(obj.bits);
+    }
+
+    public static ProtocolSet readObject(ObjectReader reader) {
+        return valueOf(reader.readLong());
+    }
+
+    private static void checkId(int id) {
+        Context.require(id >= 0 && id < MAX_PROTOCOLS, "Invalid protocol id " + id);
+    }
+}
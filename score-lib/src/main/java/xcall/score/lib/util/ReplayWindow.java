@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.score.lib.util;
+
+import score.Context;
+import score.DictDB;
+
+import java.math.BigInteger;
+
+/**
+ * Sliding window of the sequence numbers already processed from each source, to reject replayed messages.
+ * <p>
+ * Sequence numbers are grouped in words of {@link #WORD_BITS} and each source owns a ring of {@code words}
+ * slots, slot {@code word % words} holding the index of the word it tracks and one bit per sequence number.
+ * Checking a message reads a single slot and marking it writes the same slot back, so storage stays at
+ * {@code words} entries per source however many messages are received.
+ * <p>
+ * Messages may arrive out of order within the window. A sequence number whose slot has moved on to a
+ * newer word, at least {@code words * WORD_BITS} behind a number already seen, is rejected as too old.
+ */
+public class ReplayWindow {
+    public static final int WORD_BITS = 64;
+    private static final int WORD_SHIFT = 6;
+    public static final int DEFAULT_WORDS = 16;
+
+    private static final BigInteger BITS_MASK = BigInteger.ONE.shiftLeft(WORD_BITS).subtract(BigInteger.ONE);
+
+    private final DictDB<String, BigInteger> slots;
+    private final BigInteger words;
+
+    public ReplayWindow(String id) {
+        this(id, DEFAULT_WORDS);
+    }
+
+    public ReplayWindow(String id, int words) {
+        Context.require(words > 0, "Invalid window size");
+        this.slots = Context.newDictDB(id + "_slots", BigInteger.class);
+        this.words = BigInteger.valueOf(words);
+    }
+
+    /**
+     * Number of consecutive sequence numbers tracked per source.
+     */
+    public int size() {
+        return words.intValue() * WORD_BITS;
+    }
+
+    /**
+     * Whether {@code sn} from {@code source} would be accepted by {@link #check(String, BigInteger)}.
+     */
+    public boolean isNew(String source, BigInteger sn) {
+        Context.require(sn.signum() >= 0, "Invalid sequence number");
+        BigInteger word = sn.shiftRight(WORD_SHIFT);
+        BigInteger slot = slots.get(key(source, word));
+        if (slot == null) {
+            return true;
+        }
+
+        int order = slot.shiftRight(WORD_BITS).compareTo(word);
+        return order < 0 || order == 0 && !slot.testBit(sn.intValue() & (WORD_BITS - 1));
+    }
+
+    /**
+     * Marks {@code sn} from {@code source} as processed, reverting if it already was or is too old to tell.
+     */
+    public void check(String source, BigInteger sn) {
+        Context.require(sn.signum() >= 0, "Invalid sequence number");
+        BigInteger word = sn.shiftRight(WORD_SHIFT);
+        int bit = sn.intValue() & (WORD_BITS - 1);
+        String key = key(source, word);
+        BigInteger slot = slots.get(key);
+
+        BigInteger bits = BigInteger.ZERO;
+        if (slot != null) {
+            int order = slot.shiftRight(WORD_BITS).compareTo(word);
+            Context.require(order <= 0, "Sequence number too old");
+            if (order == 0) {
+                Context.require(!slot.testBit(bit), "Message already processed");
+                bits = slot.and(BITS_MASK);
+            }
+        }
+
+        slots.set(key, word.shiftLeft(WORD_BITS).or(bits.setBit(bit)));
+    }
+
+    private String key(String source, BigInteger word) {
+        return source + "/" + word.mod(words);
+    }
+}
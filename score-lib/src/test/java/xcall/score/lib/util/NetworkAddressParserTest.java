@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.score.lib.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import score.UserRevertedException;
+
+class NetworkAddressParserTest {
+    private static final String NATIVE_NID = "0x1.icon";
+    private static final String HX = "hx" + "0123456789abcdef0123456789abcdef01234567";
+    private static final String CX = "cx" + "ab".repeat(20);
+    private static final String ETH = "0x1.ETH/0x" + "ab".repeat(20);
+
+    @Test
+    void parseAll_NetworkAddresses() {
+        NetworkAddressBatch batch = NetworkAddress.parseAll(new String[]{ETH, "btp://0x1.BSC/0x2", "cosmos/osmo/1"});
+
+        assertTrue(batch.allValid());
+        assertEquals(3, batch.size());
+        assertEquals(ETH, batch.toString(0));
+        assertEquals("0x1.BSC/0x2", batch.toString(1));
+        assertEquals("0x1.BSC", batch.net(1));
+        assertEquals("0x2", batch.account(1));
+        assertEquals("osmo/1", batch.account(2));
+        assertTrue(batch.isNet(0, "0x1.ETH"));
+        assertFalse(batch.isNet(0, "0x1.ET"));
+        assertEquals(NetworkAddress.parse(ETH), batch.get(0));
+    }
+
+    @Test
+    void parseAll_MatchesParse() {
+        String[] strs = {ETH, "btp|wormhole://0x1.BSC/0x2", "a/b"};
+        NetworkAddressBatch batch = NetworkAddress.parseAll(strs);
+        for (int i = 0; i < strs.length; i++) {
+            NetworkAddress parsed = NetworkAddress.parse(strs[i]);
+            assertEquals(parsed, batch.get(i));
+            assertEquals(parsed.net(), batch.get(i).net());
+            assertEquals(parsed.account(), batch.get(i).account());
+        }
+    }
+
+    @Test
+    void parseAll_RejectsWithoutNid() {
+        String[] strs = {ETH, HX, null, "", "/0x1", "0x1.ETH/", "btp:///0x1", "btp://0x1"};
+        NetworkAddressBatch batch = NetworkAddress.parseAll(strs);
+
+        assertFalse(batch.allValid());
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6, 7}, batch.invalidIndexes());
+        assertTrue(batch.isValid(0));
+        assertFalse(batch.isValid(1));
+        assertNull(batch.toString(1));
+        assertNull(batch.get(1));
+    }
+
+    @Test
+    void parseAll_NativeForms() {
+        NetworkAddressParser parser = new NetworkAddressParser(NATIVE_NID);
+        String upper = "hx" + "0123456789ABCDEF0123456789abcdef01234567";
+        NetworkAddressBatch batch = parser.parseAll(new String[]{HX, CX, "/" + HX, "btp://" + CX, upper, ETH});
+
+        assertTrue(batch.allValid());
+        assertEquals(NATIVE_NID + "/" + HX, batch.toString(0));
+        assertEquals(NATIVE_NID + "/" + CX, batch.toString(1));
+        assertEquals(NATIVE_NID + "/" + HX, batch.toString(2));
+        assertEquals(NATIVE_NID + "/" + CX, batch.toString(3));
+        assertEquals(NATIVE_NID + "/" + upper, batch.toString(4));
+        assertEquals(NATIVE_NID, batch.net(0));
+        assertEquals(HX, batch.account(0));
+        assertEquals(ETH, batch.toString(5));
+    }
+
+    @Test
+    void parseAll_RejectsBadNativeForms() {
+        NetworkAddressParser parser = new NetworkAddressParser(NATIVE_NID);
+        String[] strs = {
+            HX.substring(0, 41),
+            HX + "0",
+            "hx" + "g".repeat(40),
+            "ax" + "12".repeat(20),
+            "hX" + "12".repeat(20),
+            "0x" + "12".repeat(20),
+            "0x" + "12".repeat(21),
+            "",
+            "/"
+        };
+        NetworkAddressBatch batch = parser.parseAll(strs);
+
+        assertEquals(strs.length, batch.invalidIndexes().length);
+        for (int i = 0; i < strs.length; i++) {
+            assertFalse(batch.isValid(i), strs[i]);
+        }
+    }
+
+    @Test
+    void parser_Reusable() {
+        NetworkAddressParser parser = new NetworkAddressParser();
+        String[] bad = new String[20];
+        assertEquals(20, parser.parseAll(bad).invalidIndexes().length);
+
+        NetworkAddressBatch batch = parser.parseAll(new String[]{ETH, null});
+        assertArrayEquals(new int[]{1}, batch.invalidIndexes());
+    }
+
+    @Test
+    void valueOfAll_RevertsWithIndexes() {
+        UserRevertedException e = assertThrows(UserRevertedException.class,
+            () -> NetworkAddress.valueOfAll(new String[]{ETH, HX, "a/b", "x"}));
+        assertTrue(e.getMessage().contains("at 1 3"), e.getMessage());
+
+        assertTrue(NetworkAddress.valueOfAll(new String[]{ETH, HX}, NATIVE_NID).allValid());
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.score.lib.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import score.ByteArrayObjectWriter;
+import score.Context;
+import score.ObjectReader;
+import score.UserRevertedException;
+
+class NetworkAddressTest {
+    private static final String ETH_ACCOUNT = "0x" + "ab".repeat(20);
+    private static final String ICON_ACCOUNT = "hx" + "12".repeat(20);
+
+    @Test
+    void parse_NetAndAccount() {
+        String str = "0x1.ETH/" + ETH_ACCOUNT;
+        NetworkAddress address = NetworkAddress.parse(str);
+
+        assertEquals("0x1.ETH", address.net());
+        assertEquals(ETH_ACCOUNT, address.account());
+        assertSame(str, address.toString());
+        assertTrue(address.isValid());
+        assertTrue(address.isNet("0x1.ETH"));
+        assertFalse(address.isNet("0x1.ET"));
+        assertFalse(address.isNet("0x1.ETH/"));
+    }
+
+    @Test
+    void parse_ProtocolPrefix() {
+        NetworkAddress address = NetworkAddress.parse("btp|wormhole://0x1.ETH/" + ETH_ACCOUNT);
+
+        assertEquals("0x1.ETH", address.net());
+        assertEquals(ETH_ACCOUNT, address.account());
+        assertEquals("0x1.ETH/" + ETH_ACCOUNT, address.toString());
+        assertEquals(NetworkAddress.parse("0x1.ETH/" + ETH_ACCOUNT), address);
+    }
+
+    @Test
+    void parse_AccountWithDelimiter() {
+        NetworkAddress address = NetworkAddress.parse("cosmos/osmo/1");
+
+        assertEquals("cosmos", address.net());
+        assertEquals("osmo/1", address.account());
+    }
+
+    @Test
+    void parse_InvalidForms() {
+        assertNull(NetworkAddress.parse(null));
+
+        NetworkAddress noNet = NetworkAddress.parse(ICON_ACCOUNT);
+        assertEquals("", noNet.net());
+        assertEquals(ICON_ACCOUNT, noNet.account());
+        assertFalse(noNet.isValid());
+
+        assertFalse(NetworkAddress.parse("/" + ETH_ACCOUNT).isValid());
+        assertFalse(NetworkAddress.parse("0x1.ETH/").isValid());
+        assertFalse(NetworkAddress.parse("btp:///" + ETH_ACCOUNT).isValid());
+        assertFalse(NetworkAddress.parse("").isValid());
+    }
+
+    @Test
+    void valueOf_RevertsOnInvalid() {
+        assertEquals("0x1.ETH", NetworkAddress.valueOf("0x1.ETH/" + ETH_ACCOUNT).net());
+
+        assertThrows(UserRevertedException.class, () -> NetworkAddress.valueOf(ICON_ACCOUNT));
+        assertThrows(UserRevertedException.class, () -> NetworkAddress.valueOf("0x1.ETH/"));
+        assertThrows(UserRevertedException.class, () -> NetworkAddress.valueOf(null));
+    }
+
+    @Test
+    void valueOf_NativeAccount() {
+        NetworkAddress address = NetworkAddress.valueOf(ICON_ACCOUNT, "0x1.icon");
+
+        assertEquals("0x1.icon", address.net());
+        assertEquals(ICON_ACCOUNT, address.account());
+        assertEquals("0x1.icon/" + ICON_ACCOUNT, address.toString());
+        assertEquals(ICON_ACCOUNT, address.accountAddress().toString());
+
+        // Addresses with a net are kept as they are
+        assertEquals("0x1.ETH", NetworkAddress.valueOf("0x1.ETH/" + ETH_ACCOUNT, "0x1.icon").net());
+    }
+
+    @Test
+    void constructor_MatchesParse() {
+        NetworkAddress built = new NetworkAddress("0x1.ETH", ETH_ACCOUNT);
+        NetworkAddress parsed = NetworkAddress.parse("0x1.ETH/" + ETH_ACCOUNT);
+
+        assertEquals(parsed, built);
+        assertEquals(parsed.hashCode(), built.hashCode());
+        assertNotEquals(NetworkAddress.parse("0x2.ETH/" + ETH_ACCOUNT), built);
+    }
+
+    @Test
+    void bytes_RoundTrip() {
+        NetworkAddress address = NetworkAddress.parse("0x1.ETH/" + ETH_ACCOUNT);
+        assertEquals(address, NetworkAddress.fromBytes(address.toBytes()));
+    }
+
+    private static void assertCompactRoundTrip(String str, int expectedLength) {
+        NetworkAddress address = NetworkAddress.parse(str);
+        byte[] compact = address.toCompactBytes();
+
+        assertEquals(expectedLength, compact.length, str);
+        NetworkAddress decoded = NetworkAddress.fromCompactBytes(compact);
+        assertEquals(address, decoded);
+        assertEquals(address.net(), decoded.net());
+        assertEquals(address.account(), decoded.account());
+    }
+
+    @Test
+    void compact_IconAccounts() {
+        // kind, net length, net, hx/cx flag and 20 bytes
+        assertCompactRoundTrip("0x1.icon/" + ICON_ACCOUNT, 2 + 8 + 21);
+        assertCompactRoundTrip("0x1.icon/cx" + "0f".repeat(20), 2 + 8 + 21);
+        assertCompactRoundTrip("0x1.icon/hx" + "00".repeat(20), 2 + 8 + 21);
+    }
+
+    @Test
+    void compact_EvmAccounts() {
+        assertCompactRoundTrip("0x1.ETH/" + ETH_ACCOUNT, 2 + 7 + 20);
+        assertCompactRoundTrip("0x1.ETH/0x" + "ff".repeat(20), 2 + 7 + 20);
+    }
+
+    @Test
+    void compact_OpaqueAccounts() {
+        // Upper case and wrong length hex can not be restored from raw bytes, so they are kept as text
+        String upper = "0x" + "AB".repeat(20);
+        assertCompactRoundTrip("0x1.ETH/" + upper, 2 + 7 + upper.length());
+        assertCompactRoundTrip("0x1.ETH/0xabc", 2 + 7 + 5);
+        assertCompactRoundTrip("0x1.icon/hx" + "12".repeat(19), 2 + 8 + 40);
+        assertCompactRoundTrip("cosmos/osmo1abc/2", 2 + 6 + 10);
+        assertCompactRoundTrip("solana/" + "9".repeat(44), 2 + 6 + 44);
+    }
+
+    @Test
+    void compact_NetLength() {
+        assertCompactRoundTrip("n".repeat(255) + "/" + ETH_ACCOUNT, 2 + 255 + 20);
+        NetworkAddress tooLong = new NetworkAddress("n".repeat(256), ETH_ACCOUNT);
+        assertThrows(AssertionError.class, tooLong::toCompactBytes);
+    }
+
+    @Test
+    void compact_ObjectRoundTrip() {
+        NetworkAddress address = NetworkAddress.parse("0x1.ETH/" + ETH_ACCOUNT);
+        ByteArrayObjectWriter writer = Context.newByteArrayObjectWriter("RLPn");
+        NetworkAddress.writeCompact(writer, address);
+
+        ObjectReader reader = Context.newByteArrayObjectReader("RLPn", writer.toByteArray());
+        assertEquals(address, NetworkAddress.readCompact(reader));
+    }
+
+    @Test
+    void compact_RejectsInvalid() {
+        assertThrows(AssertionError.class, () -> NetworkAddress.fromCompactBytes(new byte[]{0}));
+        // Net longer than the remaining bytes
+        assertThrows(AssertionError.class, () -> NetworkAddress.fromCompactBytes(new byte[]{0, 5, 'a'}));
+        // ICON kind with a truncated account
+        assertThrows(UserRevertedException.class, () -> NetworkAddress.fromCompactBytes(new byte[]{1, 1, 'a', 0, 1, 2}));
+        // ICON kind with an unknown address type
+        byte[] icon = NetworkAddress.parse("a/" + ICON_ACCOUNT).toCompactBytes();
+        icon[3] = 2;
+        assertThrows(UserRevertedException.class, () -> NetworkAddress.fromCompactBytes(icon));
+        // Net given as a registry id
+        byte[] registered = NetworkAddress.parse("a/" + ICON_ACCOUNT).toCompactBytes();
+        registered[0] |= (byte) 0x80;
+        assertThrows(AssertionError.class, () -> NetworkAddress.fromCompactBytes(registered));
+    }
+}
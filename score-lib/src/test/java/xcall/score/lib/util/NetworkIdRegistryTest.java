@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.score.lib.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.iconloop.score.test.Account;
+import com.iconloop.score.test.Score;
+import com.iconloop.score.test.ServiceManager;
+import com.iconloop.score.test.TestBase;
+
+import score.Context;
+import score.annotation.External;
+
+class NetworkIdRegistryTest extends TestBase {
+    private static final ServiceManager sm = getServiceManager();
+    private static final Account owner = sm.createAccount();
+    private static final String ETH_ACCOUNT = "0x" + "ab".repeat(20);
+    private static final String ICON_ACCOUNT = "cx" + "12".repeat(20);
+
+    private Score score;
+
+    public static class NetworkIdRegistryScore {
+        private final NetworkIdRegistry registry = new NetworkIdRegistry("nets");
+
+        @External
+        public void intern(String net) {
+            registry.intern(net);
+        }
+
+        // Registers net0, net1, ... up to count nets in one call
+        @External
+        public void internAll(int count) {
+            for (int i = registry.size(); i < count; i++) {
+                registry.intern("net" + i);
+            }
+        }
+
+        @External(readonly = true)
+        public int idOf(String net) {
+            return registry.idOf(net);
+        }
+
+        @External(readonly = true)
+        public byte[] toCompact(String address) {
+            return NetworkAddress.parse(address).toCompactBytes(registry);
+        }
+
+        @External(readonly = true)
+        public String fromCompact(byte[] compact) {
+            NetworkAddress address = NetworkAddress.fromCompactBytes(compact, registry);
+            Context.require(address.netId() == registry.idOf(address.net()), "Net id not kept");
+            return address.toString();
+        }
+    }
+
+    @BeforeEach
+    void setup() throws Exception {
+        score = sm.deploy(owner, NetworkIdRegistryScore.class);
+    }
+
+    private byte[] toCompact(String address) {
+        return (byte[]) score.call("toCompact", address);
+    }
+
+    private void assertRoundTrip(String address, int idBytes, int accountBytes) {
+        byte[] compact = toCompact(address);
+        assertEquals(1 + idBytes + accountBytes, compact.length, address);
+        assertEquals(address, score.call("fromCompact", compact));
+    }
+
+    @Test
+    void intern_SameIdForSameNet() {
+        score.invoke(owner, "intern", "0x1.ETH");
+        score.invoke(owner, "intern", "0x1.BSC");
+        score.invoke(owner, "intern", "0x1.ETH");
+
+        assertEquals(0, score.call("idOf", "0x1.ETH"));
+        assertEquals(1, score.call("idOf", "0x1.BSC"));
+        assertEquals(NetworkAddress.UNKNOWN_NET_ID, score.call("idOf", "0x1.AVAX"));
+    }
+
+    @Test
+    void compact_OneByteIds() {
+        score.invoke(owner, "internAll", 0x80);
+
+        assertRoundTrip("net0/" + ETH_ACCOUNT, 1, 20);
+        assertRoundTrip("net127/" + ICON_ACCOUNT, 1, 21);
+        assertRoundTrip("net127/opaque", 1, 6);
+        assertEquals(0x7f, toCompact("net127/" + ETH_ACCOUNT)[1]);
+    }
+
+    @Test
+    void compact_TwoByteIdsUpToMax() {
+        score.invoke(owner, "internAll", NetworkIdRegistry.MAX_ID + 1);
+
+        assertRoundTrip("net128/" + ETH_ACCOUNT, 2, 20);
+        assertRoundTrip("net255/" + ETH_ACCOUNT, 2, 20);
+        assertRoundTrip("net256/" + ICON_ACCOUNT, 2, 21);
+        assertRoundTrip("net" + NetworkIdRegistry.MAX_ID + "/" + ETH_ACCOUNT, 2, 20);
+
+        byte[] compact = toCompact("net128/" + ETH_ACCOUNT);
+        assertArrayEquals(new byte[]{(byte) 0x80, (byte) 0x80}, new byte[]{compact[1], compact[2]});
+        compact = toCompact("net" + NetworkIdRegistry.MAX_ID + "/" + ETH_ACCOUNT);
+        assertArrayEquals(new byte[]{(byte) 0xff, (byte) 0xff}, new byte[]{compact[1], compact[2]});
+
+        assertThrows(AssertionError.class, () -> score.invoke(owner, "intern", "oneTooMany"));
+    }
+
+    @Test
+    void compact_UnknownNet() {
+        score.invoke(owner, "intern", "0x1.ETH");
+
+        assertThrows(AssertionError.class, () -> toCompact("0x1.BSC/" + ETH_ACCOUNT));
+        // Id 1 is not registered
+        byte[] compact = toCompact("0x1.ETH/" + ETH_ACCOUNT);
+        compact[1] = 1;
+        assertThrows(AssertionError.class, () -> score.call("fromCompact", compact));
+    }
+
+    @Test
+    void compact_RejectsPlainEncoding() {
+        score.invoke(owner, "intern", "0x1.ETH");
+
+        byte[] plain = NetworkAddress.parse("0x1.ETH/" + ETH_ACCOUNT).toCompactBytes();
+        assertThrows(AssertionError.class, () -> score.call("fromCompact", plain));
+        // Two byte id cut short
+        assertThrows(AssertionError.class, () -> score.call("fromCompact", new byte[]{(byte) 0x82, (byte) 0x80}));
+    }
+}
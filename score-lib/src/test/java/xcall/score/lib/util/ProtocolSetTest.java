@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.score.lib.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.iconloop.score.test.Account;
+import com.iconloop.score.test.Score;
+import com.iconloop.score.test.ServiceManager;
+import com.iconloop.score.test.TestBase;
+
+import score.ByteArrayObjectWriter;
+import score.Context;
+import score.ObjectReader;
+import score.annotation.External;
+
+class ProtocolSetTest extends TestBase {
+    private static final ServiceManager sm = getServiceManager();
+    private static final Account owner = sm.createAccount();
+
+    private Score score;
+
+    public static class ProtocolRegistryScore {
+        private final ProtocolRegistry registry = new ProtocolRegistry("protocols");
+
+        @External
+        public void register(String protocol) {
+            registry.register(protocol);
+        }
+
+        @External(readonly = true)
+        public long parse(String protocols) {
+            return registry.parse(protocols).toLong();
+        }
+
+        @External(readonly = true)
+        public String format(long protocols) {
+            return registry.format(ProtocolSet.valueOf(protocols));
+        }
+
+        @External(readonly = true)
+        public String withProtocols(long protocols, String net, String account) {
+            return new ProtocolPrefixNetworkAddress(ProtocolSet.valueOf(protocols), registry, net, account).toString();
+        }
+
+        @External(readonly = true)
+        public long protocolsOf(String address) {
+            return ProtocolPrefixNetworkAddress.parse(address).protocols(registry).toLong();
+        }
+    }
+
+    @BeforeEach
+    void setup() throws Exception {
+        score = sm.deploy(owner, ProtocolRegistryScore.class);
+        for (String protocol : new String[]{"btp", "wormhole", "layerzero"}) {
+            score.invoke(owner, "register", protocol);
+        }
+    }
+
+    @Test
+    void set_Operations() {
+        ProtocolSet set = ProtocolSet.of(0).with(2).with(ProtocolSet.MAX_PROTOCOLS - 1);
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains(2));
+        assertFalse(set.contains(1));
+        assertTrue(set.contains(ProtocolSet.MAX_PROTOCOLS - 1));
+        assertEquals(0, set.nextId(0));
+        assertEquals(2, set.nextId(1));
+        assertEquals(ProtocolSet.MAX_PROTOCOLS - 1, set.nextId(3));
+        assertEquals(-1, set.nextId(ProtocolSet.MAX_PROTOCOLS));
+
+        ProtocolSet other = ProtocolSet.of(2).with(5);
+        assertTrue(set.intersects(other));
+        assertEquals(ProtocolSet.of(2), set.intersection(other));
+        assertEquals(ProtocolSet.of(0).with(ProtocolSet.MAX_PROTOCOLS - 1), set.difference(other));
+        assertEquals(4, set.union(other).size());
+        assertTrue(set.union(other).containsAll(set));
+        assertFalse(set.containsAll(other));
+    }
+
+    @Test
+    void set_EmptyIsShared() {
+        assertSame(ProtocolSet.EMPTY, ProtocolSet.valueOf(0));
+        assertSame(ProtocolSet.EMPTY, ProtocolSet.of(3).without(3));
+        assertTrue(ProtocolSet.EMPTY.isEmpty());
+        assertEquals(0, ProtocolSet.EMPTY.size());
+    }
+
+    @Test
+    void set_InvalidIds() {
+        assertThrows(AssertionError.class, () -> ProtocolSet.of(-1));
+        assertThrows(AssertionError.class, () -> ProtocolSet.of(ProtocolSet.MAX_PROTOCOLS));
+        assertThrows(AssertionError.class, () -> ProtocolSet.EMPTY.contains(ProtocolSet.MAX_PROTOCOLS));
+    }
+
+    @Test
+    void set_ObjectRoundTrip() {
+        for (ProtocolSet set : new ProtocolSet[]{ProtocolSet.EMPTY, ProtocolSet.of(0), ProtocolSet.of(63).with(1)}) {
+            ByteArrayObjectWriter writer = Context.newByteArrayObjectWriter("RLPn");
+            ProtocolSet.writeObject(writer, set);
+            ObjectReader reader = Context.newByteArrayObjectReader("RLPn", writer.toByteArray());
+            assertEquals(set, ProtocolSet.readObject(reader));
+        }
+    }
+
+    @Test
+    void registry_ParseAndFormat() {
+        long set = (long) score.call("parse", "layerzero|btp");
+
+        assertEquals(ProtocolSet.of(0).with(2).toLong(), set);
+        // Formatted in id order
+        assertEquals("btp|layerzero", score.call("format", set));
+        assertEquals(set, score.call("parse", score.call("format", set)));
+    }
+
+    @Test
+    void registry_EmptyString() {
+        assertEquals(0L, score.call("parse", ""));
+        assertEquals("", score.call("format", 0L));
+    }
+
+    @Test
+    void registry_RejectsUnknownAndEmptyParts() {
+        assertThrows(AssertionError.class, () -> score.call("parse", "ibc"));
+        assertThrows(AssertionError.class, () -> score.call("parse", "btp|"));
+        assertThrows(AssertionError.class, () -> score.call("parse", "btp||wormhole"));
+        assertThrows(AssertionError.class, () -> score.invoke(owner, "register", ""));
+        assertThrows(AssertionError.class, () -> score.invoke(owner, "register", "a|b"));
+    }
+
+    @Test
+    void registry_PrefixedAddressRoundTrip() {
+        long set = ProtocolSet.of(1).with(2).toLong();
+        String address = (String) score.call("withProtocols", set, "0x1.ETH", "0x1");
+
+        assertEquals("wormhole|layerzero://0x1.ETH/0x1", address);
+        assertEquals(set, score.call("protocolsOf", address));
+        assertEquals(0L, score.call("protocolsOf", score.call("withProtocols", 0L, "0x1.ETH", "0x1")));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xcall.score.lib.util;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.iconloop.score.test.Account;
+import com.iconloop.score.test.Score;
+import com.iconloop.score.test.ServiceManager;
+import com.iconloop.score.test.TestBase;
+
+import score.annotation.External;
+
+class ReplayWindowTest extends TestBase {
+    private static final ServiceManager sm = getServiceManager();
+    private static final Account owner = sm.createAccount();
+    private static final String source = "0x1.ETH/0x1";
+    private static final int WORDS = 2;
+
+    private Score score;
+
+    public static class ReplayWindowScore {
+        private final ReplayWindow window = new ReplayWindow("replay", WORDS);
+
+        @External
+        public void check(String source, BigInteger sn) {
+            window.check(source, sn);
+        }
+
+        @External(readonly = true)
+        public boolean isNew(String source, BigInteger sn) {
+            return window.isNew(source, sn);
+        }
+    }
+
+    @BeforeEach
+    void setup() throws Exception {
+        score = sm.deploy(owner, ReplayWindowScore.class);
+    }
+
+    private void check(long sn) {
+        score.invoke(owner, "check", source, BigInteger.valueOf(sn));
+    }
+
+    private boolean isNew(long sn) {
+        return (boolean) score.call("isNew", source, BigInteger.valueOf(sn));
+    }
+
+    @Test
+    void acceptsOutOfOrderWithinWindow() {
+        check(5);
+        check(1);
+        check(3);
+
+        assertFalse(isNew(1));
+        assertTrue(isNew(2));
+        check(2);
+        check(0);
+    }
+
+    @Test
+    void rejectsDuplicate() {
+        check(7);
+
+        assertThrows(AssertionError.class, () -> check(7));
+        assertFalse(isNew(7));
+    }
+
+    @Test
+    void duplicatesAreTrackedPerSource() {
+        check(7);
+        score.invoke(owner, "check", "0x1.BSC/0x2", BigInteger.valueOf(7));
+
+        assertThrows(AssertionError.class, () -> check(7));
+    }
+
+    @Test
+    void rejectsMessagesOutsideWindow() {
+        int size = WORDS * ReplayWindow.WORD_BITS;
+        check(size);
+
+        // Same slot as 0, now holding the newer word
+        assertFalse(isNew(0));
+        assertThrows(AssertionError.class, () -> check(0));
+        assertThrows(AssertionError.class, () -> check(ReplayWindow.WORD_BITS - 1));
+
+        // The other slot has not moved on yet
+        check(ReplayWindow.WORD_BITS);
+    }
+
+    @Test
+    void advancesAcrossWordBoundary() {
+        int bits = ReplayWindow.WORD_BITS;
+        check(bits - 1);
+        check(bits);
+
+        assertFalse(isNew(bits - 1));
+        assertFalse(isNew(bits));
+        assertTrue(isNew(bits + 1));
+
+        // Reusing the first slot for the third word resets its bits
+        check(2L * bits + 1);
+        assertFalse(isNew(2L * bits + 1));
+        assertTrue(isNew(2L * bits));
+        assertFalse(isNew(bits));
+        assertThrows(AssertionError.class, () -> check(bits - 1));
+        check(2L * bits);
+    }
+
+    @Test
+    void rejectsNegative() {
+        assertThrows(AssertionError.class, () -> check(-1));
+    }
+}
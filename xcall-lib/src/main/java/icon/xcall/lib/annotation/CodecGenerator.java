@@ -0,0 +1,643 @@
+/*
+ * Copyright (c) 2022-2022 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package icon.xcall.lib.annotation;
+
+import com.squareup.javapoet.*;
+
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import icon.xcall.lib.rlp.RLPReader;
+import icon.xcall.lib.rlp.RLPSize;
+import icon.xcall.lib.rlp.RLPWriter;
+import score.ObjectReader;
+import score.ObjectWriter;
+
+/**
+ * Builds the read and write expressions for XCall parameters.
+ * Arrays and lists are encoded as RLP lists and handled by private helper
+ * methods, which are collected here and added to the generated class.
+ * {@link XCallStruct} classes are delegated to their generated codec.
+ * <p>
+ * In plain mode the code uses {@link RLPReader} and {@link RLPWriter} instead of the
+ * score runtime, score.Address values are represented by their String form and
+ * structs are delegated to their plain codec.
+ * <p>
+ * Encoded sizes are computed with {@link RLPSize} in plain mode. Otherwise the same arithmetic is
+ * added to the generated class as helper methods, as xcall-lib is not on the classpath of SCOREs.
+ */
+class CodecGenerator {
+    private static final ClassName LIST = ClassName.get("java.util", "List");
+    private static final ClassName ARRAY_LIST = ClassName.get("scorex.util", "ArrayList");
+    private static final ClassName PLAIN_ARRAY_LIST = ClassName.get("java.util", "ArrayList");
+
+    private static final String RLP_HEADER_SIZE = "rlpHeaderSize";
+    private static final String RLP_LIST_SIZE = "rlpListSize";
+    private static final String RLP_SIZE_OF = "rlpSizeOf";
+
+    private final Map<String, MethodSpec> helpers = new LinkedHashMap<>();
+    private final boolean plain;
+
+    CodecGenerator() {
+        this(false);
+    }
+
+    CodecGenerator(boolean plain) {
+        this.plain = plain;
+    }
+
+    Collection<MethodSpec> helpers() {
+        return helpers.values();
+    }
+
+    /**
+     * Returns an expression reading a value of {@code type} from {@code reader}.
+     */
+    CodeBlock read(TypeMirror type) {
+        if (isStruct(type)) {
+            return CodeBlock.of("$T.readObject(reader)", getStructCodec(asElement(type), plain));
+        }
+
+        String scalar = getScalarName(type);
+        if (scalar != null) {
+            return CodeBlock.of("reader.read$L()", scalar);
+        }
+
+        String helper = "read" + getName(type);
+        if (!helpers.containsKey(helper)) {
+            helpers.put(helper, readHelper(helper, type));
+        }
+
+        return CodeBlock.of("$L(reader)", helper);
+    }
+
+    /**
+     * Returns a statement writing {@code value} of {@code type} to {@code writer}.
+     */
+    CodeBlock write(TypeMirror type, String value) {
+        if (isStruct(type)) {
+            return CodeBlock.of("$T.writeObject(writer, $L)", getStructCodec(asElement(type), plain), value);
+        }
+
+        String scalar = getScalarName(type);
+        if (plain && "Address".equals(scalar)) {
+            return CodeBlock.of("writer.writeAddress($L)", value);
+        }
+
+        if (scalar != null) {
+            return CodeBlock.of("writer.write($L)", value);
+        }
+
+        String helper = "write" + getName(type);
+        if (!helpers.containsKey(helper)) {
+            helpers.put(helper, writeHelper(helper, type));
+        }
+
+        return CodeBlock.of("$L(writer, $L)", helper, value);
+    }
+
+    /**
+     * Returns an expression computing the encoded size of {@code value} of {@code type}.
+     */
+    CodeBlock size(TypeMirror type, String value) {
+        if (isStruct(type)) {
+            return CodeBlock.of("$T.encodedSize($L)", getStructCodec(asElement(type), plain), value);
+        }
+
+        String scalar = getScalarName(type);
+        if ("Address".equals(scalar)) {
+            return CodeBlock.of("$L", RLPSize.ADDRESS);
+        }
+
+        if (scalar != null) {
+            if (plain) {
+                return CodeBlock.of("$T.of($L)", RLPSize.class, value);
+            }
+            if (scalar.equals("Boolean")) {
+                return CodeBlock.of("1");
+            }
+            return CodeBlock.of("$L($L)", scalarSizeHelper(scalar), value);
+        }
+
+        return listSize(CodeBlock.of("$L($L)", payloadSizeHelper(type), value));
+    }
+
+    /**
+     * Returns an expression computing the encoded size of a list with {@code payload} bytes of encoded items.
+     */
+    CodeBlock listSize(CodeBlock payload) {
+        if (plain) {
+            return CodeBlock.of("$T.list($L)", RLPSize.class, payload);
+        }
+
+        addSizeHelper(RLP_LIST_SIZE);
+        return CodeBlock.of("$L($L)", RLP_LIST_SIZE, payload);
+    }
+
+    /**
+     * Returns an expression computing the summed encoded size of {@code variables},
+     * named {@code prefix} followed by the variable name.
+     */
+    CodeBlock payloadSize(List<? extends VariableElement> variables, String prefix) {
+        if (variables.isEmpty()) {
+            return CodeBlock.of("0");
+        }
+
+        List<CodeBlock> sizes = new ArrayList<>();
+        for (VariableElement variable : variables) {
+            sizes.add(size(variable, prefix + variable.getSimpleName()));
+        }
+        return CodeBlock.join(sizes, " + ");
+    }
+
+    /**
+     * Same as {@link #read(TypeMirror)}, but reads {@link XCallBuffer} parameters as a ByteBuffer in plain mode.
+     */
+    CodeBlock read(VariableElement variable) {
+        if (isBuffer(variable)) {
+            return CodeBlock.of("reader.readByteBuffer()");
+        }
+        return read(variable.asType());
+    }
+
+    CodeBlock write(VariableElement variable, String value) {
+        if (isBuffer(variable)) {
+            return CodeBlock.of("writer.write($L)", value);
+        }
+        return write(variable.asType(), value);
+    }
+
+    CodeBlock size(VariableElement variable, String value) {
+        if (isBuffer(variable)) {
+            return CodeBlock.of("$T.sizeOf($L)", RLPWriter.class, value);
+        }
+        return size(variable.asType(), value);
+    }
+
+    TypeName typeName(VariableElement variable) {
+        if (isBuffer(variable)) {
+            return ClassName.get(ByteBuffer.class);
+        }
+        return typeName(variable.asType());
+    }
+
+    /**
+     * True for {@link XCallBuffer} parameters in plain mode.
+     */
+    private boolean isBuffer(VariableElement variable) {
+        if (variable.getAnnotation(XCallBuffer.class) == null) {
+            return false;
+        }
+
+        TypeMirror type = variable.asType();
+        if (type.getKind() != TypeKind.ARRAY || ((ArrayType) type).getComponentType().getKind() != TypeKind.BYTE) {
+            throw new RuntimeException("XCallBuffer parameter " + variable.getSimpleName() + " must be a byte[]");
+        }
+
+        return plain;
+    }
+
+    /**
+     * Java type used for values of {@code type}, String for score.Address in plain mode.
+     */
+    TypeName typeName(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return ArrayTypeName.of(typeName(getComponentType(type)));
+        }
+
+        if (type.getKind() != TypeKind.DECLARED || !plain) {
+            return TypeName.get(type);
+        }
+
+        String name = asElement(type).getQualifiedName().toString();
+        if (name.equals("score.Address")) {
+            return ClassName.get(String.class);
+        }
+
+        if (name.equals("java.util.List")) {
+            return ParameterizedTypeName.get(LIST, typeName(getComponentType(type)).box());
+        }
+
+        return TypeName.get(type);
+    }
+
+    /**
+     * Adds the statements reading a {@link XCallStruct} into {@code obj} and returning it.
+     */
+    void readStruct(MethodSpec.Builder method, TypeElement element) {
+        ClassName structName = ClassName.get(element);
+        method.addStatement("$T obj = new $T()", structName, structName)
+            .addStatement("reader.beginList()");
+
+        // Missing trailing fields keep their defaults and unknown ones are skipped,
+        // so fields can be appended without breaking older messages.
+        for (VariableElement field : getStructFields(element)) {
+            if (!typeName(field.asType()).equals(TypeName.get(field.asType()))) {
+                throw new RuntimeException("XCallStruct field " + element.getSimpleName() + "." + field.getSimpleName() + " can not be encoded without the score runtime");
+            }
+            method.beginControlFlow("if (reader.hasNext())")
+                .addStatement("obj.$L = $L", field.getSimpleName(), read(field.asType()))
+                .endControlFlow();
+        }
+
+        method.beginControlFlow("while (reader.hasNext())")
+            .addStatement("reader.skip()")
+            .endControlFlow()
+            .addStatement("reader.end()")
+            .addStatement("return obj");
+    }
+
+    /**
+     * Adds the statements writing the {@link XCallStruct} {@code obj}.
+     */
+    void writeStruct(MethodSpec.Builder method, TypeElement element) {
+        List<VariableElement> fields = getStructFields(element);
+        if (plain) {
+            method.addStatement("writer.writeListHeader($L)", payloadSize(fields, "obj."));
+        } else {
+            method.addStatement("writer.beginList($L)", fields.size());
+        }
+
+        for (VariableElement field : fields) {
+            method.addStatement("$L", write(field.asType(), "obj." + field.getSimpleName()));
+        }
+
+        if (!plain) {
+            method.addStatement("writer.end()");
+        }
+    }
+
+    /**
+     * Adds the statement returning the encoded size of the {@link XCallStruct} {@code obj}.
+     */
+    void sizeStruct(MethodSpec.Builder method, TypeElement element) {
+        method.addStatement("return $L", listSize(payloadSize(getStructFields(element), "obj.")));
+    }
+
+    Class<?> readerType() {
+        return plain ? RLPReader.class : ObjectReader.class;
+    }
+
+    Class<?> writerType() {
+        return plain ? RLPWriter.class : ObjectWriter.class;
+    }
+
+    static List<VariableElement> getStructFields(TypeElement element) {
+        List<VariableElement> fields = new ArrayList<>();
+        boolean hasConstructor = false;
+        for (Element enclosed : element.getEnclosedElements()) {
+            Set<Modifier> modifiers = enclosed.getModifiers();
+            if (enclosed.getKind() == ElementKind.CONSTRUCTOR) {
+                hasConstructor |= ((ExecutableElement) enclosed).getParameters().isEmpty() && !modifiers.contains(Modifier.PRIVATE);
+                continue;
+            }
+
+            if (enclosed.getKind() != ElementKind.FIELD || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+                throw new RuntimeException("XCallStruct field " + element.getSimpleName() + "." + enclosed.getSimpleName() + " can not be private or final");
+            }
+
+            fields.add((VariableElement) enclosed);
+        }
+
+        if (!hasConstructor) {
+            throw new RuntimeException("XCallStruct " + element.getSimpleName() + " needs a no-arg constructor");
+        }
+
+        return fields;
+    }
+
+    /**
+     * Name of the codec generated for a {@link XCallStruct} class.
+     * The plain codec is generated next to it, as fields may be package private.
+     */
+    static ClassName getStructCodec(TypeElement element, boolean plain) {
+        ClassName struct = ClassName.get(element);
+        String suffix = element.getAnnotation(XCallStruct.class).suffix();
+        String name = String.join("", struct.simpleNames()) + (plain ? "RLP" : "") + suffix;
+        return ClassName.get(struct.packageName(), name);
+    }
+
+    private boolean isStruct(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && asElement(type).getAnnotation(XCallStruct.class) != null;
+    }
+
+    private TypeElement asElement(TypeMirror type) {
+        return (TypeElement) ((DeclaredType) type).asElement();
+    }
+
+    private MethodSpec readHelper(String helper, TypeMirror type) {
+        TypeMirror component = getComponentType(type);
+        TypeName listType = ParameterizedTypeName.get(LIST, typeName(component).box());
+        MethodSpec.Builder method = MethodSpec.methodBuilder(helper)
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .returns(typeName(type))
+            .addParameter(readerType(), "reader")
+            .addStatement("reader.beginList()")
+            .addStatement("$T values = new $T<>()", listType, plain ? PLAIN_ARRAY_LIST : ARRAY_LIST)
+            .beginControlFlow("while (reader.hasNext())")
+            .addStatement("values.add($L)", read(component))
+            .endControlFlow()
+            .addStatement("reader.end()");
+
+        if (type.getKind() != TypeKind.ARRAY) {
+            return method.addStatement("return values").build();
+        }
+
+        return method
+            .addStatement("$T result = $L", typeName(type), newArray((ArrayType) type, "values.size()"))
+            .beginControlFlow("for (int i = 0; i < result.length; i++)")
+            .addStatement("result[i] = values.get(i)")
+            .endControlFlow()
+            .addStatement("return result")
+            .build();
+    }
+
+    private MethodSpec writeHelper(String helper, TypeMirror type) {
+        TypeMirror component = getComponentType(type);
+        MethodSpec.Builder method = MethodSpec.methodBuilder(helper)
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .addParameter(writerType(), "writer")
+            .addParameter(typeName(type), "values");
+
+        // Plain writers know the list size up front, so the items never have to be moved
+        if (plain) {
+            method.addStatement("writer.writeListHeader($L(values))", payloadSizeHelper(type));
+        } else {
+            String size = type.getKind() == TypeKind.ARRAY ? "values.length" : "values.size()";
+            method.addStatement("writer.beginList($L)", size);
+        }
+
+        method.beginControlFlow("for ($T value : values)", typeName(component))
+            .addStatement("$L", write(component, "value"))
+            .endControlFlow();
+
+        if (!plain) {
+            method.addStatement("writer.end()");
+        }
+        return method.build();
+    }
+
+    private String payloadSizeHelper(TypeMirror type) {
+        String helper = "payloadSize" + getName(type);
+        if (!helpers.containsKey(helper)) {
+            helpers.put(helper, sizeHelper(helper, type));
+        }
+        return helper;
+    }
+
+    private MethodSpec sizeHelper(String helper, TypeMirror type) {
+        TypeMirror component = getComponentType(type);
+        return MethodSpec.methodBuilder(helper)
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .returns(int.class)
+            .addParameter(typeName(type), "values")
+            .addStatement("int size = 0")
+            .beginControlFlow("for ($T value : values)", typeName(component))
+            .addStatement("size += $L", size(component, "value"))
+            .endControlFlow()
+            .addStatement("return size")
+            .build();
+    }
+
+    /**
+     * Name of the helper computing the encoded size of a scalar, one overload per Java type.
+     */
+    private String scalarSizeHelper(String scalar) {
+        switch (scalar) {
+            case "String":
+            case "BigInteger":
+            case "ByteArray":
+                addSizeHelper(RLP_SIZE_OF + scalar);
+                break;
+            default:
+                // Chars and all integers are written as a long
+                addSizeHelper(RLP_SIZE_OF + "Long");
+        }
+        return RLP_SIZE_OF;
+    }
+
+    /**
+     * Adds the helper {@code key} and the ones it calls, as in {@link RLPSize}.
+     */
+    private void addSizeHelper(String key) {
+        if (helpers.containsKey(key)) {
+            return;
+        }
+
+        MethodSpec.Builder method = MethodSpec.methodBuilder(key.startsWith(RLP_SIZE_OF) ? RLP_SIZE_OF : key)
+            .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .returns(int.class);
+        switch (key) {
+            case RLP_HEADER_SIZE:
+                method.addParameter(int.class, "length")
+                    .beginControlFlow("if (length <= 55)")
+                    .addStatement("return 1")
+                    .endControlFlow()
+                    .addStatement("int size = 2")
+                    .beginControlFlow("while ((length >>>= 8) != 0)")
+                    .addStatement("size++")
+                    .endControlFlow()
+                    .addStatement("return size");
+                break;
+            case RLP_LIST_SIZE:
+                method.addParameter(int.class, "payload")
+                    .addStatement("return $L(payload) + payload", RLP_HEADER_SIZE);
+                break;
+            case RLP_SIZE_OF + "ByteArray":
+                method.addParameter(byte[].class, "value")
+                    .beginControlFlow("if (value.length == 1 && (value[0] & 0xff) < 0x80)")
+                    .addStatement("return 1")
+                    .endControlFlow()
+                    .addStatement("return $L(value.length) + value.length", RLP_HEADER_SIZE);
+                break;
+            case RLP_SIZE_OF + "String":
+                // UTF-8 length, unpaired surrogates are encoded as '?'
+                method.addParameter(String.class, "value")
+                    .addStatement("int length = 0")
+                    .addStatement("int count = value.length()")
+                    .beginControlFlow("for (int i = 0; i < count; i++)")
+                    .addStatement("char c = value.charAt(i)")
+                    .beginControlFlow("if (c < 0x80)")
+                    .addStatement("length += 1")
+                    .nextControlFlow("else if (c < 0x800)")
+                    .addStatement("length += 2")
+                    .nextControlFlow("else if (c >= 0xd800 && c < 0xdc00 && i + 1 < count && value.charAt(i + 1) >= 0xdc00 && value.charAt(i + 1) < 0xe000)")
+                    .addStatement("length += 4")
+                    .addStatement("i++")
+                    .nextControlFlow("else if (c >= 0xd800 && c < 0xe000)")
+                    .addStatement("length += 1")
+                    .nextControlFlow("else")
+                    .addStatement("length += 3")
+                    .endControlFlow()
+                    .endControlFlow()
+                    .beginControlFlow("if (length == 1)")
+                    .addStatement("return 1")
+                    .endControlFlow()
+                    .addStatement("return $L(length) + length", RLP_HEADER_SIZE);
+                break;
+            case RLP_SIZE_OF + "BigInteger":
+                method.addParameter(BigInteger.class, "value")
+                    .addStatement("int length = value.bitLength() / 8 + 1")
+                    .beginControlFlow("if (length == 1 && value.signum() >= 0 && value.intValue() < 0x80)")
+                    .addStatement("return 1")
+                    .endControlFlow()
+                    .addStatement("return $L(length) + length", RLP_HEADER_SIZE);
+                break;
+            case RLP_SIZE_OF + "Long":
+                // Minimal two's complement length, as BigInteger.toByteArray
+                method.addParameter(long.class, "value")
+                    .beginControlFlow("if (value >= 0 && value < 0x80)")
+                    .addStatement("return 1")
+                    .endControlFlow()
+                    .addStatement("int length = 8")
+                    .beginControlFlow("while (length > 1)")
+                    .addStatement("long top = value >> ((length - 1) * 8 - 1)")
+                    .beginControlFlow("if (top != 0 && top != -1)")
+                    .addStatement("break")
+                    .endControlFlow()
+                    .addStatement("length--")
+                    .endControlFlow()
+                    .addStatement("return 1 + length");
+                break;
+            default:
+                throw new IllegalArgumentException(key);
+        }
+
+        if (!key.equals(RLP_HEADER_SIZE)) {
+            addSizeHelper(RLP_HEADER_SIZE);
+        }
+        helpers.put(key, method.build());
+    }
+
+    private CodeBlock newArray(ArrayType type, String size) {
+        int dimensions = 1;
+        TypeMirror base = type.getComponentType();
+        while (base.getKind() == TypeKind.ARRAY) {
+            base = ((ArrayType) base).getComponentType();
+            dimensions++;
+        }
+
+        return CodeBlock.of("new $T[$L]$L", typeName(base), size, "[]".repeat(dimensions - 1));
+    }
+
+    private TypeMirror getComponentType(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return ((ArrayType) type).getComponentType();
+        }
+
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        if (arguments.size() != 1) {
+            throw new RuntimeException("XCall annotations does not support parameter type " + type);
+        }
+
+        return arguments.get(0);
+    }
+
+    /**
+     * Name used for the ObjectReader method of types the runtime reads directly,
+     * null for arrays, lists and structs.
+     */
+    private String getScalarName(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "Boolean";
+            case BYTE:
+                return "Byte";
+            case SHORT:
+                return "Short";
+            case CHAR:
+                return "Char";
+            case INT:
+                return "Int";
+            case LONG:
+                return "Long";
+            case ARRAY:
+                if (((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE) {
+                    return "ByteArray";
+                }
+                return null;
+            case DECLARED:
+                break;
+            default:
+                throw new RuntimeException("XCall annotations does not support parameter type " + type);
+        }
+
+        if (isStruct(type)) {
+            return null;
+        }
+
+        String name = asElement(type).getQualifiedName().toString();
+        switch (name) {
+            case "java.lang.String":
+                return "String";
+            case "score.Address":
+                return "Address";
+            case "java.math.BigInteger":
+                return "BigInteger";
+            case "java.lang.Boolean":
+                return "Boolean";
+            case "java.lang.Byte":
+                return "Byte";
+            case "java.lang.Short":
+                return "Short";
+            case "java.lang.Character":
+                return "Char";
+            case "java.lang.Integer":
+                return "Int";
+            case "java.lang.Long":
+                return "Long";
+            case "java.util.List":
+                return null;
+            default:
+                throw new RuntimeException("XCall annotations does not support parameter type " + type);
+        }
+    }
+
+    /**
+     * Unique name of a type, used to name its helper methods.
+     */
+    private String getName(TypeMirror type) {
+        if (isStruct(type)) {
+            return String.join("", ClassName.get(asElement(type)).simpleNames());
+        }
+
+        String scalar = getScalarName(type);
+        if (scalar != null) {
+            if (type.getKind() == TypeKind.DECLARED && !scalar.equals("String")
+                    && !scalar.equals("Address") && !scalar.equals("BigInteger")) {
+                return "Boxed" + scalar;
+            }
+            return scalar;
+        }
+
+        if (type.getKind() == TypeKind.ARRAY) {
+            return getName(getComponentType(type)) + "Array";
+        }
+
+        return getName(getComponentType(type)) + "List";
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2022-2022 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package icon.xcall.lib.annotation;
+
+import com.squareup.javapoet.CodeBlock;
+
+import java.util.*;
+
+/**
+ * Collision free hash over a fixed set of method names, searched for at build time.
+ * The hash combines the length of a name with up to three of its characters, counted
+ * from the start or the end, so the dispatcher only has to switch on an int and confirm
+ * the match with a single equals.
+ */
+class MethodHash {
+    private static final int MAX_CHARACTERS = 3;
+
+    private final boolean length;
+    // Character positions, >= 0 counted from the start and < 0 counted from the end
+    private final int[] positions;
+    private final int minLength;
+
+    private MethodHash(boolean length, int[] positions, int minLength) {
+        this.length = length;
+        this.positions = positions;
+        this.minLength = minLength;
+    }
+
+    /**
+     * Returns the cheapest hash without collisions between {@code names}, or null if there is none.
+     */
+    static MethodHash find(Collection<String> names) {
+        int minLength = Integer.MAX_VALUE;
+        for (String name : names) {
+            minLength = Math.min(minLength, name.length());
+        }
+
+        int[] positions = new int[minLength * 2];
+        for (int i = 0; i < minLength; i++) {
+            positions[i * 2] = i;
+            positions[i * 2 + 1] = -1 - i;
+        }
+
+        // Fewer characters first, and for the same characters without the length first
+        for (int count = 0; count <= Math.min(MAX_CHARACTERS, positions.length); count++) {
+            for (boolean length : new boolean[]{false, true}) {
+                if (!length && count == 0) {
+                    continue;
+                }
+
+                MethodHash hash = find(names, length, positions, new int[count], 0, 0, minLength);
+                if (hash != null) {
+                    return hash;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static MethodHash find(Collection<String> names, boolean length, int[] positions, int[] chosen, int index, int from, int minLength) {
+        if (index == chosen.length) {
+            MethodHash candidate = new MethodHash(length, chosen.clone(), minLength);
+            Set<Integer> keys = new HashSet<>();
+            for (String name : names) {
+                if (!keys.add(candidate.of(name))) {
+                    return null;
+                }
+            }
+            return candidate;
+        }
+
+        for (int i = from; i < positions.length; i++) {
+            chosen[index] = positions[i];
+            MethodHash hash = find(names, length, positions, chosen, index + 1, i + 1, minLength);
+            if (hash != null) {
+                return hash;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Hash of a known name.
+     */
+    int of(String name) {
+        int key = length ? name.length() : 0;
+        for (int position : positions) {
+            key = key * 31 + name.charAt(position >= 0 ? position : name.length() + position);
+        }
+        return key;
+    }
+
+    /**
+     * Expression computing the hash of {@code variable}, -1 for names too short to be known.
+     */
+    CodeBlock key(String variable) {
+        List<String> parts = new ArrayList<>();
+        if (length) {
+            parts.add(variable + ".length()");
+        }
+        for (int position : positions) {
+            parts.add(charAt(variable, position));
+        }
+
+        String expression = parts.get(0);
+        for (int i = 1; i < parts.size(); i++) {
+            expression = (i > 1 ? "(" + expression + ")" : expression) + " * 31 + " + parts.get(i);
+        }
+
+        if (positions.length == 0) {
+            return CodeBlock.of("$L", expression);
+        }
+
+        return CodeBlock.of("$L.length() < $L ? -1 : $L", variable, minLength, expression);
+    }
+
+    private static String charAt(String variable, int position) {
+        if (position >= 0) {
+            return variable + ".charAt(" + position + ")";
+        }
+        return variable + ".charAt(" + variable + ".length() - " + -position + ")";
+    }
+}
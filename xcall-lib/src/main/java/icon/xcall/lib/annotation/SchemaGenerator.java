@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2022-2022 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package icon.xcall.lib.annotation;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import java.util.*;
+
+/**
+ * Builds the JSON schema describing the messages of a XCall class, so decoders
+ * can be built without the generated classes.
+ * <p>
+ * Types are written as {@code bool}, {@code int8}, {@code int16}, {@code uint16} (char),
+ * {@code int32}, {@code int64}, {@code bigint}, {@code string}, {@code address}, {@code bytes},
+ * {@code struct:<class>} for {@link XCallStruct} classes described under {@code structs},
+ * and any of these followed by {@code []} for RLP lists.
+ */
+class SchemaGenerator {
+    static final int VERSION = 1;
+
+    private final Map<String, TypeElement> structs = new TreeMap<>();
+
+    String schema(TypeElement classType, List<? extends Element> elements, boolean selectors) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"version\": ").append(VERSION).append(",\n");
+        json.append("  \"class\": ").append(quote(classType.getQualifiedName().toString())).append(",\n");
+        json.append("  \"encoding\": \"RLPn\",\n");
+        json.append("  \"mode\": ").append(quote(selectors ? "selector" : "name")).append(",\n");
+        json.append("  \"batch\": ").append(selectors ? String.valueOf(XCallProcessor.BATCH_SELECTOR) : quote(XCallProcessor.BATCH_METHOD)).append(",\n");
+        // Sequenced messages wrap an encoded call with the sender's sequence number
+        json.append("  \"sequenced\": {\n");
+        json.append("    \"marker\": ").append(selectors ? String.valueOf(XCallProcessor.SEQUENCED_SELECTOR) : quote(XCallProcessor.SEQUENCED_METHOD)).append(",\n");
+        json.append("    \"params\": [\n");
+        json.append("      { \"name\": \"sn\", \"type\": \"bigint\", \"position\": 1 },\n");
+        json.append("      { \"name\": \"call\", \"type\": \"bytes\", \"position\": 2 }\n");
+        json.append("    ]\n");
+        json.append("  },\n");
+        json.append("  \"methods\": [");
+
+        for (int i = 0; i < elements.size(); i++) {
+            ExecutableElement method = (ExecutableElement) elements.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\n");
+            json.append("      \"name\": ").append(quote(method.getSimpleName().toString())).append(",\n");
+            json.append("      \"selector\": ").append(method.getAnnotation(XCall.class).selector()).append(",\n");
+            json.append("      \"params\": ");
+            List<? extends VariableElement> parameters = method.getParameters();
+            appendFields(json, parameters.subList(1, parameters.size()), 1, "      ");
+            json.append("\n    }");
+        }
+
+        json.append("\n  ],\n");
+        json.append("  \"structs\": {");
+
+        // Structs found while writing may refer to further structs
+        Set<String> written = new HashSet<>();
+        boolean first = true;
+        while (written.size() < structs.size()) {
+            for (Map.Entry<String, TypeElement> entry : new ArrayList<>(structs.entrySet())) {
+                if (!written.add(entry.getKey())) {
+                    continue;
+                }
+
+                json.append(first ? "\n" : ",\n");
+                json.append("    ").append(quote(entry.getKey())).append(": ");
+                appendFields(json, CodecGenerator.getStructFields(entry.getValue()), 0, "    ");
+                first = false;
+            }
+        }
+
+        json.append(first ? "}\n" : "\n  }\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    /**
+     * Writes a list of fields with their position in the encoded RLP list.
+     */
+    private void appendFields(StringBuilder json, List<? extends VariableElement> fields, int offset, String indent) {
+        if (fields.isEmpty()) {
+            json.append("[]");
+            return;
+        }
+
+        json.append("[");
+        for (int i = 0; i < fields.size(); i++) {
+            VariableElement field = fields.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append(indent).append("  { \"name\": ").append(quote(field.getSimpleName().toString()));
+            json.append(", \"type\": ").append(quote(typeName(field.asType())));
+            json.append(", \"position\": ").append(i + offset);
+            if (field.getAnnotation(XCallBuffer.class) != null) {
+                json.append(", \"buffer\": true");
+            }
+            json.append(" }");
+        }
+        json.append("\n").append(indent).append("]");
+    }
+
+    private String typeName(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "bool";
+            case BYTE:
+                return "int8";
+            case SHORT:
+                return "int16";
+            case CHAR:
+                return "uint16";
+            case INT:
+                return "int32";
+            case LONG:
+                return "int64";
+            case ARRAY:
+                TypeMirror component = ((ArrayType) type).getComponentType();
+                if (component.getKind() == TypeKind.BYTE) {
+                    return "bytes";
+                }
+                return typeName(component) + "[]";
+            case DECLARED:
+                break;
+            default:
+                throw new RuntimeException("XCall annotations does not support parameter type " + type);
+        }
+
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        String name = element.getQualifiedName().toString();
+        if (element.getAnnotation(XCallStruct.class) != null) {
+            structs.put(name, element);
+            return "struct:" + name;
+        }
+
+        switch (name) {
+            case "java.lang.String":
+                return "string";
+            case "score.Address":
+                return "address";
+            case "java.math.BigInteger":
+                return "bigint";
+            case "java.lang.Boolean":
+                return "bool";
+            case "java.lang.Byte":
+                return "int8";
+            case "java.lang.Short":
+                return "int16";
+            case "java.lang.Character":
+                return "uint16";
+            case "java.lang.Integer":
+                return "int32";
+            case "java.lang.Long":
+                return "int64";
+            case "java.util.List":
+                return typeName(((DeclaredType) type).getTypeArguments().get(0)) + "[]";
+            default:
+                throw new RuntimeException("XCall annotations does not support parameter type " + type);
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -25,4 +25,12 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.SOURCE)
 public @interface XCall {
     String suffix() default "XCall";
-}
\ No newline at end of file
+
+    /**
+     * Numeric id written in place of the method name.
+     * If one method of a class declares a selector all of them must, and the
+     * generated messages and dispatcher use the int instead of the name.
+     * Must be positive, 0 means the method is dispatched by name.
+     */
+    int selector() default 0;
+}
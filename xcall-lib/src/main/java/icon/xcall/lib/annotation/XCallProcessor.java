@@ -26,15 +26,34 @@ import javax.lang.model.SourceVersion;
 import javax.lang.model.element.*;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
 import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.stream.Stream;
 
+import icon.xcall.lib.rlp.RLPReader;
+import icon.xcall.lib.rlp.RLPSize;
+import icon.xcall.lib.rlp.RLPWriter;
 import score.ByteArrayObjectWriter;
 import score.Context;
 import score.ObjectReader;
 
 public class XCallProcessor extends AbstractProcessor {
+    static final String BATCH_METHOD = "#batch";
+    static final int BATCH_SELECTOR = 0;
+    static final String SEQUENCED_METHOD = "#seq";
+    static final int SEQUENCED_SELECTOR = -1;
+    static final String CODEC_OPTION = "xcall.codec";
+    // Class of the replay guard passed to processSequenced, any class with check(String from, BigInteger sn)
+    static final String REPLAY_OPTION = "xcall.replay";
+    static final String SCHEMA_PATH = "META-INF/xcall/";
+
+    private final Set<String> generatedClasses = new HashSet<>();
+
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
@@ -44,9 +63,15 @@ public class XCallProcessor extends AbstractProcessor {
     public Set<String> getSupportedAnnotationTypes() {
         Set<String> s = new HashSet<>();
         s.add(XCall.class.getCanonicalName());
+        s.add(XCallStruct.class.getCanonicalName());
         return s;
     }
 
+    @Override
+    public Set<String> getSupportedOptions() {
+        return Set.of(CODEC_OPTION, REPLAY_OPTION);
+    }
+
     @Override
     public SourceVersion getSupportedSourceVersion() {
         return SourceVersion.latestSupported();
@@ -54,67 +79,122 @@ public class XCallProcessor extends AbstractProcessor {
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
-        Map<String, List<Element>> classMethods = new HashMap<>();
-        Map<String, TypeElement> classes = new HashMap<>();
-
         boolean claimed = false;
-        for (TypeElement annotation : annotations) {
-            Set<? extends Element> annotationElements = roundEnv.getElementsAnnotatedWith(annotation);
-            if (annotationElements.isEmpty()) {
-                continue;
+        for (Element element : roundEnv.getElementsAnnotatedWith(XCallStruct.class)) {
+            claimed = true;
+            generateStructCodecClass(processingEnv.getFiler(), (TypeElement) element, false);
+            if (generateCodecs() && checkPlainStruct((TypeElement) element)) {
+                generateStructCodecClass(processingEnv.getFiler(), (TypeElement) element, true);
             }
+        }
 
+        Set<TypeElement> classes = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(XCall.class)) {
             claimed = true;
-            for (Element element : annotationElements) {
-                TypeElement typeElement = (TypeElement) element.getEnclosingElement();
-                String elementClassName = ClassName.get(typeElement).toString();
-                List<Element> methods = classMethods.getOrDefault(elementClassName, new ArrayList<Element>());
-                methods.add(element);
-                classMethods.put(elementClassName, methods);
-                classes.put(elementClassName, typeElement);
+            classes.add((TypeElement) element.getEnclosingElement());
+        }
+
+        for (TypeElement classType : classes) {
+            if (!generatedClasses.add(classType.getQualifiedName().toString())) {
+                continue;
+            }
+
+            List<ExecutableElement> methodElements = new ArrayList<>();
+            collectMethods(classType, new HashSet<>(), new HashMap<>(), methodElements);
+            generateProcessorClass(processingEnv.getFiler(), classType, methodElements);
+            generateMessageClass(processingEnv.getFiler(), classType, methodElements);
+            generateSchema(processingEnv.getFiler(), classType, methodElements);
+            if (generateCodecs()) {
+                generateCodecClass(processingEnv.getFiler(), classType, methodElements);
             }
         }
 
-        classes.forEach((className, classType) -> {
-            if (classMethods.get(className).size() == 0) {
-                return;
+        return claimed;
+    }
+
+    private boolean generateCodecs() {
+        return Boolean.parseBoolean(processingEnv.getOptions().get(CODEC_OPTION));
+    }
+
+    /**
+     * Reports the fields of a struct that the off-chain codecs can not represent, such as score.Address.
+     */
+    private boolean checkPlainStruct(TypeElement element) {
+        CodecGenerator codecs = new CodecGenerator(true);
+        boolean plain = true;
+        for (VariableElement field : CodecGenerator.getStructFields(element)) {
+            if (!codecs.typeName(field.asType()).equals(TypeName.get(field.asType()))) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "XCallStruct field " + element.getSimpleName() + "." + field.getSimpleName()
+                        + " of type " + field.asType() + " is not supported by the off-chain codecs of " + CODEC_OPTION,
+                    field);
+                plain = false;
             }
+        }
+        return plain;
+    }
 
-            classType.getInterfaces().forEach(type -> {
-                List<Element> superList = classMethods.get(ClassName.get(type).toString());
-                if (superList == null || superList.size() == 0) {
-                    return;
-                }
-                List<Element> concatedList = Stream.concat(classMethods.get(className).stream(), superList.stream()).toList();
-                classMethods.put(className, concatedList);
+    /**
+     * Class given with the replay option, null if processSequenced is not generated.
+     */
+    private ClassName replayGuard() {
+        String name = processingEnv.getOptions().get(REPLAY_OPTION);
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        try {
+            return ClassName.bestGuess(name);
+        } catch (IllegalArgumentException e) {
+            messager.errorMessage("%s must be the qualified name of the replay guard class, was %s", REPLAY_OPTION, name);
+            return null;
+        }
+    }
 
-            });
+    /**
+     * Collects the XCall methods of a class and all of its super classes and interfaces,
+     * visiting each type once. Methods of a sub type take precedence over the ones they override.
+     */
+    private void collectMethods(TypeElement classType, Set<String> visited, Map<String, ExecutableElement> methods, List<ExecutableElement> result) {
+        if (!visited.add(classType.getQualifiedName().toString())) {
+            return;
+        }
 
-            if (!classType.getSuperclass().getKind().equals(TypeKind.NONE)) {
-                List<Element> superList = classMethods.get(ClassName.get(classType.getSuperclass()).toString());
-                if (superList == null || superList.size() == 0) {
-                    return;
-                }
+        for (Element element : classType.getEnclosedElements()) {
+            if (element.getKind() != ElementKind.METHOD || element.getAnnotation(XCall.class) == null) {
+                continue;
+            }
 
-                List<Element> concatedList = Stream.concat(classMethods.get(className).stream(), superList.stream()).toList();
-                classMethods.put(className, concatedList);
+            ExecutableElement method = (ExecutableElement) element;
+            String name = method.getSimpleName().toString();
+            ExecutableElement existing = methods.get(name);
+            if (existing == null) {
+                methods.put(name, method);
+                result.add(method);
+            } else if (!processingEnv.getTypeUtils().isSameType(
+                    processingEnv.getTypeUtils().erasure(existing.asType()),
+                    processingEnv.getTypeUtils().erasure(method.asType()))) {
+                throw new RuntimeException("XCall method " + name + " is declared more than once with different parameters");
             }
-        });
+        }
 
-        classMethods.forEach((className, methodElements) -> {
-            generateProcessorClass(processingEnv.getFiler(), ClassName.bestGuess(className), methodElements);
-            generateMessageClass(processingEnv.getFiler(), ClassName.bestGuess(className), methodElements);
-        });
+        for (TypeMirror type : classType.getInterfaces()) {
+            collectMethods((TypeElement) processingEnv.getTypeUtils().asElement(type), visited, methods, result);
+        }
 
-        return claimed;
+        if (classType.getSuperclass().getKind() != TypeKind.NONE) {
+            collectMethods((TypeElement) processingEnv.getTypeUtils().asElement(classType.getSuperclass()), visited, methods, result);
+        }
     }
 
-    private void generateProcessorClass(Filer filer, ClassName elementClassName, List<? extends Element> elements) {
+    private void generateProcessorClass(Filer filer, TypeElement classType, List<? extends Element> elements) {
         Element element =  elements.iterator().next();
         XCall ann = element.getAnnotation(XCall.class);
+        ClassName elementClassName = ClassName.get(classType);
         ClassName className = ClassName.get(elementClassName.packageName(), elementClassName.simpleName() + ann.suffix());
 
-        TypeSpec typeSpec = processorTypeSpec(elementClassName, className, elements);
+        TypeSpec typeSpec = processorTypeSpec(elementClassName, className, elements).toBuilder()
+            .addOriginatingElement(classType)
+            .build();
         JavaFile javaFile = JavaFile.builder(className.packageName(), typeSpec).build();
         try {
             javaFile.writeTo(filer);
@@ -123,11 +203,58 @@ public class XCallProcessor extends AbstractProcessor {
         }
     }
 
-    private void generateMessageClass(Filer filer, ClassName elementClassName, List<? extends Element> elements) {
+    private void generateMessageClass(Filer filer, TypeElement classType, List<? extends Element> elements) {
         String messagesPackage  = this.getClass().getPackageName().replaceFirst("annotation", "messages");
-        ClassName className = ClassName.get(messagesPackage, elementClassName.simpleName() + "Messages");
+        ClassName className = ClassName.get(messagesPackage, classType.getSimpleName() + "Messages");
+
+        TypeSpec typeSpec = messagesTypeSpec(className, elements).toBuilder()
+            .addOriginatingElement(classType)
+            .build();
+        JavaFile javaFile = JavaFile.builder(className.packageName(), typeSpec).build();
+        try {
+            javaFile.writeTo(filer);
+        } catch (IOException e) {
+            messager.warningMessage("create javaFile error : %s", e.getMessage());
+        }
+    }
+
+    private void generateCodecClass(Filer filer, TypeElement classType, List<? extends Element> elements) {
+        String codecPackage  = this.getClass().getPackageName().replaceFirst("annotation", "codec");
+        ClassName className = ClassName.get(codecPackage, classType.getSimpleName() + "Codec");
+
+        TypeSpec typeSpec = codecTypeSpec(className, elements).toBuilder()
+            .addOriginatingElement(classType)
+            .build();
+        JavaFile javaFile = JavaFile.builder(className.packageName(), typeSpec).build();
+        try {
+            javaFile.writeTo(filer);
+        } catch (IOException e) {
+            messager.warningMessage("create javaFile error : %s", e.getMessage());
+        }
+    }
 
-        TypeSpec typeSpec = messagesTypeSpec(className, elements);
+    /**
+     * Writes the schema of the messages to META-INF/xcall/&lt;class&gt;.json next to the compiled classes.
+     */
+    private void generateSchema(Filer filer, TypeElement classType, List<? extends Element> elements) {
+        String schema = new SchemaGenerator().schema(classType, elements, useSelectors(elements));
+        String path = SCHEMA_PATH + classType.getQualifiedName() + ".json";
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", path, classType);
+            try (Writer writer = file.openWriter()) {
+                writer.write(schema);
+            }
+        } catch (IOException e) {
+            messager.warningMessage("create schema error : %s", e.getMessage());
+        }
+    }
+
+    private void generateStructCodecClass(Filer filer, TypeElement element, boolean plain) {
+        ClassName className = CodecGenerator.getStructCodec(element, plain);
+
+        TypeSpec typeSpec = structCodecTypeSpec(element, className, new CodecGenerator(plain)).toBuilder()
+            .addOriginatingElement(element)
+            .build();
         JavaFile javaFile = JavaFile.builder(className.packageName(), typeSpec).build();
         try {
             javaFile.writeTo(filer);
@@ -141,45 +268,152 @@ public class XCallProcessor extends AbstractProcessor {
                 .classBuilder(className)
                 .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
 
-        MethodSpec.Builder handleMethod = MethodSpec.methodBuilder("process")
+        boolean selectors = useSelectors(elements);
+        CodecGenerator codecs = new CodecGenerator();
+        TypeName fromType = getFromType(elements);
+        CodeBlock parseFrom = parseFrom(fromType);
+
+        // from is parsed once in each entry point and the parsed form is shared by all calls of a batch
+        builder.addMethod(MethodSpec.methodBuilder("process")
             .addModifiers(Modifier.PUBLIC)
             .addModifiers(Modifier.STATIC)
             .addParameter(elementClassName, "score")
             .addParameter(ParameterSpec.builder(String.class, "from").build())
             .addParameter(ParameterSpec.builder(byte[].class, "data").build())
+            .addStatement("dispatch(score, $L, data, false)", parseFrom)
+            .build());
+
+        MethodSpec.Builder handleMethod = MethodSpec.methodBuilder("dispatch")
+            .addModifiers(Modifier.PRIVATE)
+            .addModifiers(Modifier.STATIC)
+            .addParameter(elementClassName, "score")
+            .addParameter(ParameterSpec.builder(fromType, "from").build())
+            .addParameter(ParameterSpec.builder(byte[].class, "data").build())
+            .addParameter(ParameterSpec.builder(boolean.class, "nested").build())
             .addStatement("$T reader = $T.newByteArrayObjectReader(\"RLPn\", data)", ObjectReader.class, Context.class)
-            .addStatement("reader.beginList()")
-            .addStatement("String method = reader.readString()")
-            .beginControlFlow("switch (method)");
+            .addStatement("reader.beginList()");
+
+        if (selectors) {
+            handleMethod.addStatement("int method = reader.readInt()");
+        } else {
+            handleMethod.addStatement("String method = reader.readString()");
+        }
+
+        // Method names or selectors with the call they dispatch to, the batch first
+        List<CodeBlock> labels = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<CodeBlock> calls = new ArrayList<>();
+        labels.add(batchId(selectors));
+        names.add(BATCH_METHOD);
+        calls.add(CodeBlock.of("processCalls(score, from, reader, nested)"));
 
         for (Element element : elements) {
             Name methodName = element.getSimpleName();
             ExecutableElement executableElement = (ExecutableElement) element;
 
             List<? extends VariableElement> parameters = executableElement.getParameters();
-            VariableElement fromParam = parameters.get(0);
-            if(!fromParam.toString().equals("from") || !fromParam.asType().toString().endsWith(".String")) {
-                throw new RuntimeException("First parameter in a XCall must be the from parameter, (String from)");
+            if (selectors) {
+                labels.add(CodeBlock.of("$L", getSelector(element)));
+            } else {
+                labels.add(CodeBlock.of("$S", methodName));
             }
+            names.add(methodName.toString());
 
-            handleMethod.addCode("case $S: \n", methodName);
-            handleMethod.addCode("$> score." + methodName + "(from");
-
+            CodeBlock.Builder call = CodeBlock.builder().add("score." + methodName + "(from");
             for (int i = 1; i < parameters.size(); i++) {
-                TypeMirror type = parameters.get(i).asType();
-                String parser = getParseMethod(type.toString());
-                handleMethod.addCode(", reader.$L()", parser);
+                call.add(", $L", codecs.read(parameters.get(i)));
             }
+            calls.add(call.add(")").build());
+        }
 
-            handleMethod.addCode(");\n$<");
-            handleMethod.addStatement("$>break$<");
+        // Method names are dispatched on a hash found at build time and confirmed with a single equals,
+        // instead of a String switch which hashes the whole name
+        MethodHash hash = selectors ? null : MethodHash.find(names);
+        if (hash == null) {
+            handleMethod.beginControlFlow("switch (method)");
+            for (int i = 0; i < labels.size(); i++) {
+                handleMethod.addCode("case $L: \n", labels.get(i));
+                handleMethod.addStatement("$>$L", calls.get(i));
+                handleMethod.addStatement("break$<");
+            }
+            handleMethod.addCode("default: \n");
+            handleMethod.addStatement("$>$T.revert()$<", Context.class);
+            handleMethod.endControlFlow();
+        } else {
+            handleMethod.addStatement("int key = $L", hash.key("method"));
+            handleMethod.beginControlFlow("switch (key)");
+            for (int i = 0; i < labels.size(); i++) {
+                handleMethod.addCode("case $L: \n$>", hash.of(names.get(i)));
+                handleMethod.beginControlFlow("if (method.equals($L))", labels.get(i));
+                handleMethod.addStatement("$L", calls.get(i));
+                handleMethod.addStatement("return");
+                handleMethod.endControlFlow();
+                handleMethod.addStatement("break$<");
+            }
+            handleMethod.endControlFlow();
+            handleMethod.addStatement("$T.revert()", Context.class);
+        }
+        builder.addMethod(handleMethod.build());
 
+        MethodSpec.Builder batchMethod = MethodSpec.methodBuilder("processBatch")
+            .addModifiers(Modifier.PUBLIC)
+            .addModifiers(Modifier.STATIC)
+            .addParameter(elementClassName, "score")
+            .addParameter(ParameterSpec.builder(String.class, "from").build())
+            .addParameter(ParameterSpec.builder(byte[].class, "data").build())
+            .addStatement("$T reader = $T.newByteArrayObjectReader(\"RLPn\", data)", ObjectReader.class, Context.class)
+            .addStatement("reader.beginList()");
+
+        if (selectors) {
+            batchMethod.addStatement("$T.require(reader.readInt() == $L, \"Not a batch message\")", Context.class, BATCH_SELECTOR);
+        } else {
+            batchMethod.addStatement("$T.require(reader.readString().equals($S), \"Not a batch message\")", Context.class, BATCH_METHOD);
         }
 
-        handleMethod.addCode("default: \n");
-        handleMethod.addStatement("$>$T.revert()$<", Context.class);
-        handleMethod.endControlFlow();
-        builder.addMethod(handleMethod.build());
+        batchMethod.addStatement("processCalls(score, $L, reader, false)", parseFrom);
+        builder.addMethod(batchMethod.build());
+
+        // Calls of a batch are dispatched as nested, so a batch inside a batch is rejected
+        MethodSpec callsMethod = MethodSpec.methodBuilder("processCalls")
+            .addModifiers(Modifier.PRIVATE)
+            .addModifiers(Modifier.STATIC)
+            .addParameter(elementClassName, "score")
+            .addParameter(ParameterSpec.builder(fromType, "from").build())
+            .addParameter(ParameterSpec.builder(ObjectReader.class, "reader").build())
+            .addParameter(ParameterSpec.builder(boolean.class, "nested").build())
+            .addStatement("$T.require(!nested, \"Nested batch\")", Context.class)
+            .addStatement("reader.beginList()")
+            .beginControlFlow("while (reader.hasNext())")
+            .addStatement("dispatch(score, from, reader.readByteArray(), true)")
+            .endControlFlow()
+            .addStatement("reader.end()")
+            .build();
+        builder.addMethod(callsMethod);
+
+        // Messages wrapped by Messages.sequenced, each sequence number accepted once per sender
+        ClassName replayGuard = replayGuard();
+        if (replayGuard != null) {
+            MethodSpec.Builder sequencedMethod = MethodSpec.methodBuilder("processSequenced")
+                .addModifiers(Modifier.PUBLIC)
+                .addModifiers(Modifier.STATIC)
+                .addParameter(elementClassName, "score")
+                .addParameter(ParameterSpec.builder(String.class, "from").build())
+                .addParameter(ParameterSpec.builder(byte[].class, "data").build())
+                .addParameter(replayGuard, "window")
+                .addStatement("$T reader = $T.newByteArrayObjectReader(\"RLPn\", data)", ObjectReader.class, Context.class)
+                .addStatement("reader.beginList()");
+
+            if (selectors) {
+                sequencedMethod.addStatement("$T.require(reader.readInt() == $L, \"Not a sequenced message\")", Context.class, SEQUENCED_SELECTOR);
+            } else {
+                sequencedMethod.addStatement("$T.require(reader.readString().equals($S), \"Not a sequenced message\")", Context.class, SEQUENCED_METHOD);
+            }
+
+            sequencedMethod.addStatement("window.check(from, reader.readBigInteger())");
+            sequencedMethod.addStatement("dispatch(score, $L, reader.readByteArray(), false)", parseFrom);
+            builder.addMethod(sequencedMethod.build());
+        }
+        builder.addMethods(codecs.helpers());
 
         return builder.build();
     }
@@ -189,6 +423,8 @@ public class XCallProcessor extends AbstractProcessor {
                 .classBuilder(className)
                 .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
 
+        boolean selectors = useSelectors(elements);
+        CodecGenerator codecs = new CodecGenerator();
         for (Element element : elements) {
             Name methodName = element.getSimpleName();
             ExecutableElement executableElement = (ExecutableElement) element;
@@ -199,66 +435,382 @@ public class XCallProcessor extends AbstractProcessor {
                 .addModifiers(Modifier.STATIC)
                 .returns(byte[].class)
                 .addStatement("$T writer = $T.newByteArrayObjectWriter(\"RLPn\")", ByteArrayObjectWriter.class, Context.class)
-                .addStatement("writer.beginList($L)", parameters.size())
-                .addStatement("writer.write($S)", methodName.toString());
+                .addStatement("writer.beginList($L)", parameters.size());
 
-            for (int i = 1; i < parameters.size(); i++) {
-                TypeName type = TypeName.get(parameters.get(i).asType());
-                Name name = parameters.get(i).getSimpleName();
+            if (selectors) {
+                createMethod.addStatement("writer.write($L)", getSelector(element));
+            } else {
+                createMethod.addStatement("writer.write($S)", methodName.toString());
+            }
+
+            MethodSpec.Builder sizeMethod = MethodSpec.methodBuilder(methodName + "EncodedSize")
+                .addModifiers(Modifier.PUBLIC)
+                .addModifiers(Modifier.STATIC)
+                .returns(int.class);
 
-                createMethod.addParameter(type, name.toString());
-                createMethod.addStatement("writer.write($L)", name.toString());
+            List<? extends VariableElement> arguments = parameters.subList(1, parameters.size());
+            for (VariableElement argument : arguments) {
+                TypeMirror type = argument.asType();
+                String name = argument.getSimpleName().toString();
+
+                createMethod.addParameter(TypeName.get(type), name);
+                createMethod.addStatement("$L", codecs.write(argument, name));
+                sizeMethod.addParameter(TypeName.get(type), name);
             }
 
             createMethod.addStatement("writer.end()");
             createMethod.addStatement("return writer.toByteArray()");
+            sizeMethod.addStatement("return $L", codecs.listSize(CodeBlock.of("$L + $L", idSize(element, selectors), codecs.payloadSize(arguments, ""))));
             builder.addMethod(createMethod.build());
+            builder.addMethod(sizeMethod.build());
         }
 
+        MethodSpec batchMethod = MethodSpec.methodBuilder("batch")
+            .addModifiers(Modifier.PUBLIC)
+            .addModifiers(Modifier.STATIC)
+            .returns(byte[].class)
+            .addParameter(byte[][].class, "calls")
+            .varargs()
+            .addStatement("$T writer = $T.newByteArrayObjectWriter(\"RLPn\")", ByteArrayObjectWriter.class, Context.class)
+            .addStatement("writer.beginList(2)")
+            .addStatement("writer.write($L)", batchId(selectors))
+            .addStatement("writer.beginList(calls.length)")
+            .beginControlFlow("for (byte[] call : calls)")
+            .addStatement("writer.write(call)")
+            .endControlFlow()
+            .addStatement("writer.end()")
+            .addStatement("writer.end()")
+            .addStatement("return writer.toByteArray()")
+            .build();
+        builder.addMethod(batchMethod);
+
+        MethodSpec sequencedMethod = MethodSpec.methodBuilder("sequenced")
+            .addModifiers(Modifier.PUBLIC)
+            .addModifiers(Modifier.STATIC)
+            .returns(byte[].class)
+            .addParameter(BigInteger.class, "sn")
+            .addParameter(byte[].class, "call")
+            .addStatement("$T writer = $T.newByteArrayObjectWriter(\"RLPn\")", ByteArrayObjectWriter.class, Context.class)
+            .addStatement("writer.beginList(3)")
+            .addStatement("writer.write($L)", sequencedId(selectors))
+            .addStatement("writer.write(sn)")
+            .addStatement("writer.write(call)")
+            .addStatement("writer.end()")
+            .addStatement("return writer.toByteArray()")
+            .build();
+        builder.addMethod(sequencedMethod);
+        builder.addMethods(codecs.helpers());
+
         return builder.build();
     }
 
-    private String getParseMethod(String paramType) {
-        paramType = paramType.substring(paramType.lastIndexOf(".") + 1);
-        switch(paramType) {
-            case "String":
-                return "readString";
-            case "Address":
-                return "readAddress";
-            case "BigInteger":
-                return "readBigInteger";
-            case "Boolean":
-                return "readBoolean";
-            case "byte[]":
-                return "readByteArray";
-            default:
-                throw new RuntimeException("XCall annotations does not support parameter type " + paramType);
+    /**
+     * Same messages as {@link #messagesTypeSpec} but without the score runtime, for use off-chain.
+     * Decoded messages are passed to a Handler with one default method per XCall method.
+     */
+    private TypeSpec codecTypeSpec(ClassName className, List<? extends Element> elements) {
+        TypeSpec.Builder builder = TypeSpec
+                .classBuilder(className)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        boolean selectors = useSelectors(elements);
+        CodecGenerator codecs = new CodecGenerator(true);
+        ClassName handlerName = className.nestedClass("Handler");
+        TypeSpec.Builder handler = TypeSpec.interfaceBuilder(handlerName)
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC);
+
+        MethodSpec.Builder decodeMethod = MethodSpec.methodBuilder("decode")
+            .addModifiers(Modifier.PRIVATE)
+            .addModifiers(Modifier.STATIC)
+            .addParameter(RLPReader.class, "reader")
+            .addParameter(handlerName, "handler")
+            .addParameter(boolean.class, "nested")
+            .addStatement("reader.beginList()");
+
+        if (selectors) {
+            decodeMethod.addStatement("int method = reader.readInt()");
+        } else {
+            decodeMethod.addStatement("String method = reader.readString()");
+        }
+
+        decodeMethod.beginControlFlow("switch (method)");
+        decodeMethod.addCode("case $L: \n$>", batchId(selectors));
+        decodeMethod.beginControlFlow("if (nested)");
+        decodeMethod.addStatement("throw new $T(\"Nested batch\")", IllegalArgumentException.class);
+        decodeMethod.endControlFlow();
+        decodeMethod.addStatement("reader.beginList()");
+        decodeMethod.beginControlFlow("while (reader.hasNext())");
+        decodeMethod.addStatement("decode(new $T(reader.readByteBuffer()), handler, true)", RLPReader.class);
+        decodeMethod.endControlFlow();
+        decodeMethod.addStatement("reader.end()");
+        decodeMethod.addStatement("break$<");
+
+        for (Element element : elements) {
+            String methodName = element.getSimpleName().toString();
+            String encodeName = "encode" + Character.toUpperCase(methodName.charAt(0)) + methodName.substring(1);
+            List<? extends VariableElement> parameters = ((ExecutableElement) element).getParameters();
+
+            MethodSpec.Builder createMethod = MethodSpec.methodBuilder(methodName)
+                .addModifiers(Modifier.PUBLIC)
+                .addModifiers(Modifier.STATIC)
+                .returns(byte[].class);
+
+            MethodSpec.Builder sizeMethod = MethodSpec.methodBuilder(methodName + "EncodedSize")
+                .addModifiers(Modifier.PUBLIC)
+                .addModifiers(Modifier.STATIC)
+                .returns(int.class);
+
+            MethodSpec.Builder encodeMethod = MethodSpec.methodBuilder(encodeName)
+                .addModifiers(Modifier.PUBLIC)
+                .addModifiers(Modifier.STATIC)
+                .addParameter(RLPWriter.class, "writer");
+
+            MethodSpec.Builder handlerMethod = MethodSpec.methodBuilder(methodName)
+                .addModifiers(Modifier.PUBLIC, Modifier.DEFAULT);
+
+            List<? extends VariableElement> arguments = parameters.subList(1, parameters.size());
+            encodeMethod.addStatement("writer.writeListHeader($L + $L)", idSize(element, selectors), codecs.payloadSize(arguments, ""));
+            if (selectors) {
+                encodeMethod.addStatement("writer.write($L)", getSelector(element));
+                decodeMethod.addCode("case $L: \n", getSelector(element));
+            } else {
+                encodeMethod.addStatement("writer.write($S)", methodName);
+                decodeMethod.addCode("case $S: \n", methodName);
+            }
+            decodeMethod.addCode("$> handler.$L(", methodName);
+
+            List<String> names = new ArrayList<>();
+            for (VariableElement argument : arguments) {
+                String name = argument.getSimpleName().toString();
+                TypeName typeName = codecs.typeName(argument);
+
+                createMethod.addParameter(typeName, name);
+                sizeMethod.addParameter(typeName, name);
+                encodeMethod.addParameter(typeName, name);
+                encodeMethod.addStatement("$L", codecs.write(argument, name));
+                handlerMethod.addParameter(typeName, name);
+                decodeMethod.addCode(names.isEmpty() ? "$L" : ", $L", codecs.read(argument));
+                names.add(name);
+            }
+
+            // Sized up front, so the message is written straight into the returned array
+            String argumentList = String.join(", ", names);
+            createMethod.addStatement("$T writer = new $T(new byte[$LEncodedSize($L)])", RLPWriter.class, RLPWriter.class, methodName, argumentList);
+            createMethod.addStatement("$L(writer$L)", encodeName, names.isEmpty() ? "" : ", " + argumentList);
+            createMethod.addStatement("return writer.buffer()");
+            sizeMethod.addStatement("return $T.list($L + $L)", RLPSize.class, idSize(element, selectors), codecs.payloadSize(arguments, ""));
+            decodeMethod.addCode(");\n$<");
+            decodeMethod.addStatement("$>break$<");
+
+            builder.addMethod(createMethod.build());
+            builder.addMethod(sizeMethod.build());
+            builder.addMethod(encodeMethod.build());
+            handler.addMethod(handlerMethod.build());
         }
+
+        decodeMethod.addCode("default: \n");
+        decodeMethod.addStatement("$>throw new $T(\"Unknown method \" + method)$<", IllegalArgumentException.class);
+        decodeMethod.endControlFlow();
+        decodeMethod.addStatement("reader.end()");
+
+        MethodSpec batchMethod = MethodSpec.methodBuilder("batch")
+            .addModifiers(Modifier.PUBLIC)
+            .addModifiers(Modifier.STATIC)
+            .returns(byte[].class)
+            .addParameter(byte[][].class, "calls")
+            .varargs()
+            .addStatement("int callsSize = 0")
+            .beginControlFlow("for (byte[] call : calls)")
+            .addStatement("callsSize += $T.of(call)", RLPSize.class)
+            .endControlFlow()
+            .addStatement("int size = $L + $T.list(callsSize)", batchIdSize(selectors), RLPSize.class)
+            .addStatement("$T writer = new $T(new byte[$T.list(size)])", RLPWriter.class, RLPWriter.class, RLPSize.class)
+            .addStatement("writer.writeListHeader(size)")
+            .addStatement("writer.write($L)", batchId(selectors))
+            .addStatement("writer.writeListHeader(callsSize)")
+            .beginControlFlow("for (byte[] call : calls)")
+            .addStatement("writer.write(call)")
+            .endControlFlow()
+            .addStatement("return writer.buffer()")
+            .build();
+        builder.addMethod(batchMethod);
+
+        builder.addMethod(MethodSpec.methodBuilder("decode")
+            .addModifiers(Modifier.PUBLIC)
+            .addModifiers(Modifier.STATIC)
+            .addParameter(byte[].class, "data")
+            .addParameter(handlerName, "handler")
+            .addStatement("decode(new $T(data), handler)", RLPReader.class)
+            .build());
+        builder.addMethod(MethodSpec.methodBuilder("decode")
+            .addModifiers(Modifier.PUBLIC)
+            .addModifiers(Modifier.STATIC)
+            .addParameter(ByteBuffer.class, "data")
+            .addParameter(handlerName, "handler")
+            .addStatement("decode(new $T(data), handler)", RLPReader.class)
+            .build());
+        builder.addMethod(MethodSpec.methodBuilder("decode")
+            .addModifiers(Modifier.PUBLIC)
+            .addModifiers(Modifier.STATIC)
+            .addParameter(RLPReader.class, "reader")
+            .addParameter(handlerName, "handler")
+            .addStatement("decode(reader, handler, false)")
+            .build());
+        builder.addMethod(decodeMethod.build());
+        builder.addType(handler.build());
+        builder.addMethods(codecs.helpers());
+
+        return builder.build();
     }
 
-    private String getSerializeMethod(String paramType) {
-        paramType = paramType.substring(paramType.lastIndexOf(".") + 1);
-        switch(paramType) {
-            case "String":
-                return "serializeString";
-            case "String[]":
-                return "serializeStringArray";
-            case "Address":
-                return "serializeAddress";
-            case "Address[]":
-                return "serializeAddressArray";
-            case "BigInteger":
-                return "serializeBigInteger";
-            case "BigInteger[]":
-                return "serializeBigIntegerArray";
-            case "Boolean":
-                return "serializeBoolean";
-            case "Boolean[]":
-                return "serializeBooleanArray";
-            case "byte[]":
-                return "serializeBytes";
-            default:
-                throw new RuntimeException("XCall annotations does not support parameter type " + paramType);
+    private TypeSpec structCodecTypeSpec(TypeElement element, ClassName className, CodecGenerator codecs) {
+        TypeSpec.Builder builder = TypeSpec
+                .classBuilder(className)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        ClassName structName = ClassName.get(element);
+
+        MethodSpec.Builder readMethod = MethodSpec.methodBuilder("readObject")
+            .addModifiers(Modifier.PUBLIC)
+            .addModifiers(Modifier.STATIC)
+            .returns(structName)
+            .addParameter(codecs.readerType(), "reader");
+        codecs.readStruct(readMethod, element);
+
+        MethodSpec.Builder writeMethod = MethodSpec.methodBuilder("writeObject")
+            .addModifiers(Modifier.PUBLIC)
+            .addModifiers(Modifier.STATIC)
+            .addParameter(codecs.writerType(), "writer")
+            .addParameter(structName, "obj");
+        codecs.writeStruct(writeMethod, element);
+
+        MethodSpec.Builder sizeMethod = MethodSpec.methodBuilder("encodedSize")
+            .addModifiers(Modifier.PUBLIC)
+            .addModifiers(Modifier.STATIC)
+            .returns(int.class)
+            .addParameter(structName, "obj");
+        codecs.sizeStruct(sizeMethod, element);
+
+        builder.addMethod(readMethod.build());
+        builder.addMethod(writeMethod.build());
+        builder.addMethod(sizeMethod.build());
+        builder.addMethods(codecs.helpers());
+
+        return builder.build();
+    }
+
+    private CodeBlock batchId(boolean selectors) {
+        if (selectors) {
+            return CodeBlock.of("$L", BATCH_SELECTOR);
+        }
+
+        return CodeBlock.of("$S", BATCH_METHOD);
+    }
+
+    private CodeBlock sequencedId(boolean selectors) {
+        if (selectors) {
+            return CodeBlock.of("$L", SEQUENCED_SELECTOR);
+        }
+
+        return CodeBlock.of("$S", SEQUENCED_METHOD);
+    }
+
+    /**
+     * Encoded size of the method name or selector of a message.
+     */
+    private int idSize(Element element, boolean selectors) {
+        if (selectors) {
+            return RLPSize.of(getSelector(element));
+        }
+
+        return RLPSize.of(element.getSimpleName().toString());
+    }
+
+    private int batchIdSize(boolean selectors) {
+        if (selectors) {
+            return RLPSize.of(BATCH_SELECTOR);
+        }
+
+        return RLPSize.of(BATCH_METHOD);
+    }
+
+    /**
+     * Type of the from parameter shared by all XCall methods of a class, either String or
+     * a type with a static valueOf(String) which the processor uses to parse it once per message.
+     */
+    private TypeName getFromType(List<? extends Element> elements) {
+        TypeMirror fromType = null;
+        for (Element element : elements) {
+            List<? extends VariableElement> parameters = ((ExecutableElement) element).getParameters();
+            if (parameters.isEmpty() || !parameters.get(0).getSimpleName().contentEquals("from")) {
+                throw new RuntimeException("First parameter in a XCall must be the from parameter, (String from)");
+            }
+
+            TypeMirror type = parameters.get(0).asType();
+            if (fromType == null) {
+                fromType = type;
+            } else if (!processingEnv.getTypeUtils().isSameType(fromType, type)) {
+                throw new RuntimeException("The from parameter of " + element.getSimpleName() + " must have the same type in all XCall methods");
+            }
+        }
+
+        TypeName typeName = TypeName.get(fromType);
+        if (typeName.equals(TypeName.get(String.class))) {
+            return typeName;
+        }
+
+        if (fromType.getKind() == TypeKind.DECLARED) {
+            TypeElement typeElement = (TypeElement) processingEnv.getTypeUtils().asElement(fromType);
+            for (Element member : typeElement.getEnclosedElements()) {
+                if (member.getKind() != ElementKind.METHOD || !member.getSimpleName().contentEquals("valueOf")) {
+                    continue;
+                }
+
+                ExecutableElement method = (ExecutableElement) member;
+                if (method.getModifiers().containsAll(Set.of(Modifier.PUBLIC, Modifier.STATIC))
+                        && method.getParameters().size() == 1
+                        && TypeName.get(method.getParameters().get(0).asType()).equals(TypeName.get(String.class))
+                        && processingEnv.getTypeUtils().isSameType(method.getReturnType(), fromType)) {
+                    return typeName;
+                }
+            }
         }
+
+        throw new RuntimeException("The from parameter of a XCall must be a String or have a static valueOf(String), was " + fromType);
+    }
+
+    private CodeBlock parseFrom(TypeName fromType) {
+        if (fromType.equals(TypeName.get(String.class))) {
+            return CodeBlock.of("from");
+        }
+
+        return CodeBlock.of("$T.valueOf(from)", fromType);
+    }
+
+    private int getSelector(Element element) {
+        return element.getAnnotation(XCall.class).selector();
+    }
+
+    private boolean useSelectors(List<? extends Element> elements) {
+        Set<Integer> selectors = new HashSet<>();
+        for (Element element : elements) {
+            int selector = getSelector(element);
+            if (selector < 0) {
+                throw new RuntimeException("XCall selector of " + element.getSimpleName() + " must be positive");
+            }
+            if (selector != 0 && !selectors.add(selector)) {
+                throw new RuntimeException("XCall selector " + selector + " is used by more than one method");
+            }
+        }
+
+        if (selectors.isEmpty()) {
+            return false;
+        }
+
+        if (selectors.size() != elements.size()) {
+            throw new RuntimeException("Either all or none of the XCall methods in a class must declare a selector");
+        }
+
+        return true;
     }
 }
\ No newline at end of file
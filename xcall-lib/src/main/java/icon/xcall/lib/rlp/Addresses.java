@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2022-2022 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package icon.xcall.lib.rlp;
+
+/**
+ * Conversion between ICON address strings and their 21 byte encoding,
+ * without the score runtime.
+ */
+final class Addresses {
+    static final int LENGTH = 21;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Addresses() {
+    }
+
+    static byte[] toBytes(String address) {
+        if (address.length() != 2 + (LENGTH - 1) * 2) {
+            throw new IllegalArgumentException("Invalid address " + address);
+        }
+
+        byte[] bytes = new byte[LENGTH];
+        if (address.startsWith("cx")) {
+            bytes[0] = 1;
+        } else if (!address.startsWith("hx")) {
+            throw new IllegalArgumentException("Invalid address " + address);
+        }
+
+        for (int i = 1; i < LENGTH; i++) {
+            int high = Character.digit(address.charAt(i * 2), 16);
+            int low = Character.digit(address.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid address " + address);
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+
+        return bytes;
+    }
+
+    static String toString(byte[] bytes, int offset, int length) {
+        if (length != LENGTH || (bytes[offset] != 0 && bytes[offset] != 1)) {
+            throw new IllegalArgumentException("Invalid address length " + length);
+        }
+
+        char[] chars = new char[2 + (LENGTH - 1) * 2];
+        chars[0] = bytes[offset] == 1 ? 'c' : 'h';
+        chars[1] = 'x';
+        for (int i = 1; i < LENGTH; i++) {
+            int b = bytes[offset + i] & 0xff;
+            chars[i * 2] = HEX[b >>> 4];
+            chars[i * 2 + 1] = HEX[b & 0xf];
+        }
+
+        return new String(chars);
+    }
+}
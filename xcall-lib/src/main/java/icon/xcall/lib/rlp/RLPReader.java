@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2022-2022 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package icon.xcall.lib.rlp;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * RLPn reader that does not depend on the score runtime.
+ * Reads the same format as {@code Context.newByteArrayObjectReader("RLPn", data)}
+ * directly from a byte array or a {@link ByteBuffer} without copying the input.
+ * A reader can be reused for many messages by calling {@link #reset(ByteBuffer)}.
+ */
+public class RLPReader {
+    private ByteBuffer data;
+    private int position;
+    private int limit;
+    private int[] listLimits = new int[8];
+    private int depth;
+
+    // Item at position, filled by parseItem
+    private int payloadStart;
+    private int payloadLength;
+    private boolean isList;
+
+    public RLPReader(byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    public RLPReader(ByteBuffer data) {
+        reset(data);
+    }
+
+    public void reset(byte[] data) {
+        reset(ByteBuffer.wrap(data));
+    }
+
+    public void reset(ByteBuffer data) {
+        this.data = data;
+        this.position = data.position();
+        this.limit = data.limit();
+        this.depth = 0;
+    }
+
+    public void beginList() {
+        parseItem();
+        if (!isList) {
+            throw new IllegalStateException("Expected a list at " + position);
+        }
+
+        if (depth == listLimits.length) {
+            listLimits = Arrays.copyOf(listLimits, depth * 2);
+        }
+        listLimits[depth++] = limit;
+        position = payloadStart;
+        limit = payloadStart + payloadLength;
+    }
+
+    public boolean hasNext() {
+        return position < limit;
+    }
+
+    public void end() {
+        if (depth == 0) {
+            throw new IllegalStateException("end without beginList");
+        }
+
+        position = limit;
+        limit = listLimits[--depth];
+    }
+
+    public void skip() {
+        parseItem();
+        position = payloadStart + payloadLength;
+    }
+
+    public byte[] readByteArray() {
+        parseBytes();
+        byte[] value = new byte[payloadLength];
+        data.duplicate().position(payloadStart).get(value);
+        return value;
+    }
+
+    /**
+     * Returns a read only view of the next byte string without copying it.
+     */
+    public ByteBuffer readByteBuffer() {
+        parseBytes();
+        ByteBuffer value = data.duplicate();
+        value.limit(payloadStart + payloadLength).position(payloadStart);
+        return value.slice().asReadOnlyBuffer();
+    }
+
+    public String readString() {
+        parseBytes();
+        if (data.hasArray()) {
+            return new String(data.array(), data.arrayOffset() + payloadStart, payloadLength, StandardCharsets.UTF_8);
+        }
+        return new String(readBytesAt(), StandardCharsets.UTF_8);
+    }
+
+    public BigInteger readBigInteger() {
+        parseBytes();
+        if (payloadLength == 0) {
+            return BigInteger.ZERO;
+        }
+        return new BigInteger(readBytesAt());
+    }
+
+    public long readLong() {
+        parseBytes();
+        if (payloadLength > 8) {
+            throw new ArithmeticException("Value out of range");
+        }
+
+        long value = 0;
+        for (int i = 0; i < payloadLength; i++) {
+            value = (value << 8) | (data.get(payloadStart + i) & 0xff);
+        }
+        if (payloadLength > 0 && payloadLength < 8 && data.get(payloadStart) < 0) {
+            value |= -1L << (payloadLength * 8);
+        }
+        return value;
+    }
+
+    public int readInt() {
+        long value = readLong();
+        if (value != (int) value) {
+            throw new ArithmeticException("Value out of range");
+        }
+        return (int) value;
+    }
+
+    public short readShort() {
+        long value = readLong();
+        if (value != (short) value) {
+            throw new ArithmeticException("Value out of range");
+        }
+        return (short) value;
+    }
+
+    public byte readByte() {
+        long value = readLong();
+        if (value != (byte) value) {
+            throw new ArithmeticException("Value out of range");
+        }
+        return (byte) value;
+    }
+
+    public char readChar() {
+        return (char) readLong();
+    }
+
+    public boolean readBoolean() {
+        return readLong() != 0;
+    }
+
+    /**
+     * Reads a 21 byte ICON address and returns it in its hx... or cx... form.
+     */
+    public String readAddress() {
+        parseBytes();
+        byte[] bytes = readBytesAt();
+        return Addresses.toString(bytes, 0, bytes.length);
+    }
+
+    private byte[] readBytesAt() {
+        byte[] value = new byte[payloadLength];
+        for (int i = 0; i < payloadLength; i++) {
+            value[i] = data.get(payloadStart + i);
+        }
+        return value;
+    }
+
+    private void parseBytes() {
+        parseItem();
+        if (isList) {
+            throw new IllegalStateException("Expected bytes at " + position);
+        }
+        position = payloadStart + payloadLength;
+    }
+
+    private void parseItem() {
+        if (position >= limit) {
+            throw new IllegalStateException("No more items");
+        }
+
+        int prefix = data.get(position) & 0xff;
+        if (prefix < 0x80) {
+            setItem(position, 1, false);
+        } else if (prefix <= 0xb7) {
+            setItem(position + 1, prefix - 0x80, false);
+        } else if (prefix < 0xc0) {
+            int lengthSize = prefix - 0xb7;
+            setItem(position + 1 + lengthSize, readLength(position + 1, lengthSize), false);
+        } else if (prefix <= 0xf7) {
+            setItem(position + 1, prefix - 0xc0, true);
+        } else {
+            int lengthSize = prefix - 0xf7;
+            setItem(position + 1 + lengthSize, readLength(position + 1, lengthSize), true);
+        }
+
+        if (payloadStart + payloadLength > limit) {
+            throw new IllegalStateException("Item exceeds its list at " + position);
+        }
+    }
+
+    private void setItem(int start, int length, boolean list) {
+        payloadStart = start;
+        payloadLength = length;
+        isList = list;
+    }
+
+    private int readLength(int at, int lengthSize) {
+        if (lengthSize > 4) {
+            throw new IllegalStateException("Item too large at " + at);
+        }
+
+        int length = 0;
+        for (int i = 0; i < lengthSize; i++) {
+            length = (length << 8) | (data.get(at + i) & 0xff);
+        }
+        if (length < 0) {
+            throw new IllegalStateException("Item too large at " + at);
+        }
+        return length;
+    }
+}
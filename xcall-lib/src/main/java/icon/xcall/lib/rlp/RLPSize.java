@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2022-2022 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package icon.xcall.lib.rlp;
+
+import java.math.BigInteger;
+
+/**
+ * Encoded RLPn sizes of values, computed without encoding them.
+ * Only uses classes available to SCOREs, so it can be used on-chain as well.
+ */
+public final class RLPSize {
+    /**
+     * Encoded size of an Address, a 21 byte string.
+     */
+    public static final int ADDRESS = 22;
+
+    private static final int SHORT_LIMIT = 55;
+
+    private RLPSize() {
+    }
+
+    public static int of(byte[] value) {
+        if (value.length == 1 && (value[0] & 0xff) < 0x80) {
+            return 1;
+        }
+        return bytes(value.length);
+    }
+
+    public static int of(String value) {
+        // A one byte string is always below 0x80, unpaired surrogates are encoded as '?'
+        int length = utf8Length(value);
+        if (length == 1) {
+            return 1;
+        }
+        return bytes(length);
+    }
+
+    public static int of(BigInteger value) {
+        int length = value.bitLength() / 8 + 1;
+        if (length == 1 && value.signum() >= 0 && value.intValue() < 0x80) {
+            return 1;
+        }
+        return bytes(length);
+    }
+
+    public static int of(long value) {
+        if (value >= 0 && value < 0x80) {
+            return 1;
+        }
+        return 1 + integerLength(value);
+    }
+
+    public static int of(boolean value) {
+        return 1;
+    }
+
+    /**
+     * Encoded size of a list with {@code payload} bytes of encoded items.
+     */
+    public static int list(int payload) {
+        return headerSize(payload) + payload;
+    }
+
+    /**
+     * Encoded size of a byte string of {@code length} bytes, other than a single byte below 0x80.
+     */
+    public static int bytes(int length) {
+        return headerSize(length) + length;
+    }
+
+    static int headerSize(int length) {
+        if (length <= SHORT_LIMIT) {
+            return 1;
+        }
+        return 1 + lengthSize(length);
+    }
+
+    static int lengthSize(int length) {
+        int bytes = 1;
+        while ((length >>>= 8) != 0) {
+            bytes++;
+        }
+        return bytes;
+    }
+
+    /**
+     * Number of bytes of the minimal two's complement form of {@code value}, as BigInteger.toByteArray.
+     */
+    static int integerLength(long value) {
+        int length = 8;
+        while (length > 1) {
+            long top = value >> ((length - 1) * 8 - 1);
+            if (top != 0 && top != -1) {
+                break;
+            }
+            length--;
+        }
+        return length;
+    }
+
+    /**
+     * Length of String.getBytes(UTF_8), where unpaired surrogates are replaced by a single byte.
+     */
+    private static int utf8Length(String value) {
+        int length = 0;
+        int count = value.length();
+        for (int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2022-2022 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package icon.xcall.lib.rlp;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * RLPn writer that does not depend on the score runtime.
+ * Produces the same bytes as {@code Context.newByteArrayObjectWriter("RLPn")}.
+ * A writer can be reused for many messages by calling {@link #reset()}.
+ * <p>
+ * When the encoded size is known up front, see {@link RLPSize}, a writer can wrap a
+ * caller provided buffer and lists can be written with {@link #writeListHeader(int)},
+ * so nothing is copied or moved after being written.
+ */
+public class RLPWriter {
+    private static final int SHORT_LIMIT = 55;
+    private static final int BYTES_OFFSET = 0x80;
+    private static final int LONG_BYTES_OFFSET = 0xb7;
+    private static final int LIST_OFFSET = 0xc0;
+    private static final int LONG_LIST_OFFSET = 0xf7;
+
+    private byte[] buffer;
+    private final int offset;
+    private final boolean fixed;
+    private int size;
+    private int[] listStarts = new int[8];
+    private int depth;
+
+    public RLPWriter() {
+        this(256);
+    }
+
+    public RLPWriter(int capacity) {
+        buffer = new byte[capacity];
+        offset = 0;
+        fixed = false;
+    }
+
+    /**
+     * Writes into {@code buffer}, which is never replaced. Writing past its end throws.
+     */
+    public RLPWriter(byte[] buffer) {
+        this(buffer, 0);
+    }
+
+    /**
+     * Writes into {@code buffer} starting at {@code offset}, which is never replaced.
+     * Writing past its end throws.
+     */
+    public RLPWriter(byte[] buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.fixed = true;
+        this.size = offset;
+    }
+
+    public void reset() {
+        size = offset;
+        depth = 0;
+    }
+
+    public int size() {
+        return size - offset;
+    }
+
+    /**
+     * Returns the array written to, without copying. Only the bytes from the
+     * offset up to {@link #size()} bytes later are written by this writer.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public byte[] toByteArray() {
+        checkComplete();
+        return Arrays.copyOfRange(buffer, offset, size);
+    }
+
+    public void writeTo(ByteBuffer out) {
+        checkComplete();
+        out.put(buffer, offset, size - offset);
+    }
+
+    public void beginList() {
+        if (depth == listStarts.length) {
+            listStarts = Arrays.copyOf(listStarts, depth * 2);
+        }
+        listStarts[depth++] = size;
+    }
+
+    public void end() {
+        if (depth == 0) {
+            throw new IllegalStateException("end without beginList");
+        }
+
+        int start = listStarts[--depth];
+        int length = size - start;
+        int headerSize = RLPSize.headerSize(length);
+        ensureCapacity(headerSize);
+        System.arraycopy(buffer, start, buffer, start + headerSize, length);
+        writeHeader(start, LIST_OFFSET, LONG_LIST_OFFSET, length);
+        size += headerSize;
+    }
+
+    /**
+     * Writes the header of a list of {@code payloadLength} bytes. The items must follow
+     * and are not closed by {@link #end()}.
+     */
+    public void writeListHeader(int payloadLength) {
+        int headerSize = RLPSize.headerSize(payloadLength);
+        ensureCapacity(headerSize);
+        writeHeader(size, LIST_OFFSET, LONG_LIST_OFFSET, payloadLength);
+        size += headerSize;
+    }
+
+    public void write(byte[] value) {
+        write(value, 0, value.length);
+    }
+
+    public void write(byte[] value, int offset, int length) {
+        if (length == 1 && (value[offset] & 0xff) < BYTES_OFFSET) {
+            ensureCapacity(1);
+            buffer[size++] = value[offset];
+            return;
+        }
+
+        int headerSize = RLPSize.headerSize(length);
+        ensureCapacity(headerSize + length);
+        writeHeader(size, BYTES_OFFSET, LONG_BYTES_OFFSET, length);
+        size += headerSize;
+        System.arraycopy(value, offset, buffer, size, length);
+        size += length;
+    }
+
+    public void write(ByteBuffer value) {
+        int length = value.remaining();
+        if (value.hasArray()) {
+            write(value.array(), value.arrayOffset() + value.position(), length);
+            return;
+        }
+
+        if (length == 1 && (value.get(value.position()) & 0xff) < BYTES_OFFSET) {
+            ensureCapacity(1);
+            buffer[size++] = value.get(value.position());
+            return;
+        }
+
+        int headerSize = RLPSize.headerSize(length);
+        ensureCapacity(headerSize + length);
+        writeHeader(size, BYTES_OFFSET, LONG_BYTES_OFFSET, length);
+        size += headerSize;
+        value.duplicate().get(buffer, size, length);
+        size += length;
+    }
+
+    public void write(String value) {
+        write(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void write(BigInteger value) {
+        write(value.toByteArray());
+    }
+
+    public void write(boolean value) {
+        write(value ? 1L : 0L);
+    }
+
+    public void write(byte value) {
+        write((long) value);
+    }
+
+    public void write(short value) {
+        write((long) value);
+    }
+
+    public void write(char value) {
+        write((long) value);
+    }
+
+    public void write(int value) {
+        write((long) value);
+    }
+
+    /**
+     * Writes the minimal two's complement bytes of {@code value}, as BigInteger.toByteArray does.
+     */
+    public void write(long value) {
+        int length = RLPSize.integerLength(value);
+        if (length == 1 && value >= 0 && value < BYTES_OFFSET) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+            return;
+        }
+
+        ensureCapacity(1 + length);
+        buffer[size++] = (byte) (BYTES_OFFSET + length);
+        for (int i = length - 1; i >= 0; i--) {
+            buffer[size++] = (byte) (value >> (i * 8));
+        }
+    }
+
+    /**
+     * Writes an ICON address string (hx... or cx...) as its 21 byte form.
+     */
+    public void writeAddress(String address) {
+        write(Addresses.toBytes(address));
+    }
+
+    /**
+     * Encoded size of the remaining bytes of {@code value}, see {@link RLPSize} for other types.
+     */
+    public static int sizeOf(ByteBuffer value) {
+        int length = value.remaining();
+        if (length == 1 && (value.get(value.position()) & 0xff) < BYTES_OFFSET) {
+            return 1;
+        }
+        return RLPSize.bytes(length);
+    }
+
+    private void writeHeader(int at, int shortOffset, int longOffset, int length) {
+        if (length <= SHORT_LIMIT) {
+            buffer[at] = (byte) (shortOffset + length);
+            return;
+        }
+
+        int lengthSize = RLPSize.lengthSize(length);
+        buffer[at] = (byte) (longOffset + lengthSize);
+        for (int i = 0; i < lengthSize; i++) {
+            buffer[at + lengthSize - i] = (byte) (length >>> (i * 8));
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            if (fixed) {
+                throw new IllegalStateException("Buffer is too small");
+            }
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    private void checkComplete() {
+        if (depth != 0) {
+            throw new IllegalStateException("list is not ended");
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package icon.xcall.lib.annotation;
+
+import javax.tools.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles sources in memory with the {@link XCallProcessor}, against the test classpath.
+ */
+class Compilation {
+    final Path output;
+    final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+    final boolean success;
+    private ClassLoader loader;
+
+    private Compilation(Path output, List<Diagnostic<? extends JavaFileObject>> diagnostics, boolean success) {
+        this.output = output;
+        this.diagnostics = diagnostics;
+        this.success = success;
+    }
+
+    /**
+     * Compiles {@code sources}, keyed by qualified class name, with the processor options {@code options}.
+     */
+    static Compilation compile(Map<String, String> sources, String... options) {
+        try {
+            Path output = Files.createTempDirectory("xcall");
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+
+            List<String> arguments = new ArrayList<>(List.of(
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", output.toString(),
+                "-s", output.toString(),
+                "-parameters"));
+            for (String option : options) {
+                arguments.add("-A" + option);
+            }
+
+            List<JavaFileObject> units = sources.entrySet().stream()
+                .map(entry -> source(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, arguments, null, units);
+            task.setProcessors(List.of(new XCallProcessor()));
+            boolean success = task.call();
+            return new Compilation(output, diagnostics.getDiagnostics(), success);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static JavaFileObject source(String className, String code) {
+        URI uri = URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension);
+        return new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    List<String> errors() {
+        return diagnostics.stream()
+            .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+            .map(diagnostic -> diagnostic.getMessage(null))
+            .collect(Collectors.toList());
+    }
+
+    String generated(String className) throws IOException {
+        return Files.readString(output.resolve(className.replace('.', '/') + ".java"));
+    }
+
+    Class<?> load(String className) throws ClassNotFoundException {
+        if (loader == null) {
+            try {
+                loader = new URLClassLoader(new URL[]{output.toUri().toURL()}, getClass().getClassLoader());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return Class.forName(className, true, loader);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package icon.xcall.lib.annotation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class MethodHashTest {
+    private static final List<String> HUB_TOKEN = List.of(
+        "xCrossTransfer", "xCrossTransferRevert", "xCrossTransferRevertCompact", "xWithdraw", "xHubTransfer");
+
+    private static final List<String> GATEWAY = List.of(
+        "transfer", "transferFrom", "approve", "mint", "burn", "setAdmin", "getAdmin", "setFee", "getFee",
+        "pause", "unpause", "addSpoke", "removeSpoke", "xDeposit", "xWithdraw", "xSwap", "xStake", "xUnstake",
+        "xClaim", "xVote", "xDelegate", "xUndelegate", "xBorrow", "xRepay", "xSupply", "xRedeem", "xLiquidate",
+        "xBridge", "xRoute", "xCancel", "xFill", "xQuote", "xSettle", "xSync", "xPing", "xPong",
+        "setA", "setB", "getA", "getB", "seta", "setb");
+
+    private static void assertCollisionFree(List<String> names) {
+        MethodHash hash = MethodHash.find(names);
+        assertNotNull(hash, names.toString());
+
+        Set<Integer> keys = new HashSet<>();
+        for (String name : names) {
+            assertTrue(keys.add(hash.of(name)), name);
+        }
+    }
+
+    @Test
+    void hubToken_NoCollisions() {
+        assertCollisionFree(HUB_TOKEN);
+    }
+
+    @Test
+    void spokeToken_NoCollisions() {
+        assertCollisionFree(List.of("xHubTransfer"));
+    }
+
+    @Test
+    void largeInterface_NoCollisions() {
+        assertCollisionFree(GATEWAY);
+    }
+
+    @Test
+    void caseOnlyDifferences_NoCollisions() {
+        assertCollisionFree(List.of("seta", "setA", "Seta", "a", "A"));
+    }
+
+    @Test
+    void distinctLengths_LengthOnly() {
+        // No characters are read, so short names need no guard
+        assertEquals("method.length()", MethodHash.find(List.of("xHubTransfer")).key("method").toString());
+        assertEquals("method.length()", MethodHash.find(HUB_TOKEN).key("method").toString());
+    }
+
+    @Test
+    void shortNames_TakeGuard() {
+        MethodHash hash = MethodHash.find(GATEWAY);
+        String key = hash.key("method").toString();
+
+        // The shortest known names have 4 characters, shorter names must not reach charAt
+        assertTrue(key.startsWith("method.length() < 4 ? -1 : "), key);
+    }
+
+    @Test
+    void key_MatchesOf() {
+        // Evaluates the generated expression for names of at least the minimum length
+        for (List<String> names : List.of(HUB_TOKEN, GATEWAY)) {
+            MethodHash hash = MethodHash.find(names);
+            String key = hash.key("method").toString();
+            for (String name : names) {
+                assertEquals(hash.of(name), evaluate(key, name), name);
+            }
+        }
+    }
+
+    @Test
+    void shortUnknownName_Guarded() {
+        MethodHash hash = MethodHash.find(GATEWAY);
+        String key = hash.key("method").toString();
+
+        for (String name : new String[]{"", "x", "set"}) {
+            assertEquals(-1, evaluate(key, name), name);
+        }
+    }
+
+    @Test
+    void noHash_WhenNamesOnlyDifferPastThreeCharacters() {
+        // Same length and the same characters at every position the hash may read
+        assertNull(MethodHash.find(List.of("aaaa", "aaab", "aaba", "abaa", "baaa")));
+    }
+
+    /**
+     * Evaluates an expression produced by {@link MethodHash#key(String)} for {@code method}.
+     */
+    private static int evaluate(String expression, String method) {
+        String guard = "method.length() < ";
+        if (expression.startsWith(guard)) {
+            int end = expression.indexOf(" ? -1 : ");
+            int minLength = Integer.parseInt(expression.substring(guard.length(), end));
+            if (method.length() < minLength) {
+                return -1;
+            }
+            expression = expression.substring(end + " ? -1 : ".length());
+        }
+
+        // Parentheses only group the left operand, which is evaluated first anyway
+        expression = expression.replace("(", "").replace(")", "");
+        int key = 0;
+        boolean first = true;
+        for (String term : expression.split(" \\* 31 \\+ ")) {
+            key = first ? term(term, method) : key * 31 + term(term, method);
+            first = false;
+        }
+        return key;
+    }
+
+    private static int term(String term, String method) {
+        if (term.equals("method.length")) {
+            return method.length();
+        }
+
+        String index = term.substring("method.charAt".length());
+        if (index.startsWith("method.length - ")) {
+            return method.charAt(method.length() - Integer.parseInt(index.substring("method.length - ".length())));
+        }
+        return method.charAt(Integer.parseInt(index));
+    }
+}
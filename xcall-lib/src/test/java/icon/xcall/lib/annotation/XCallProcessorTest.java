@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package icon.xcall.lib.annotation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import javax.tools.Diagnostic;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import score.Address;
+
+class XCallProcessorTest {
+    private static final String TYPED = "package sample;\n"
+        + "import java.math.BigInteger;\n"
+        + "import java.util.List;\n"
+        + "import score.Address;\n"
+        + "import icon.xcall.lib.annotation.XCall;\n"
+        + "public interface Typed {\n"
+        + "    @XCall\n"
+        + "    void prims(String from, int a, long b, boolean c, short d, byte e, char f, Integer g, Boolean h);\n"
+        + "    @XCall\n"
+        + "    void arrays(String from, BigInteger[] a, Address[] b, String[] c, int[] d, byte[][] e, String[][] f);\n"
+        + "    @XCall\n"
+        + "    void lists(String from, List<BigInteger> a, List<List<String>> b, List<long[]> c);\n"
+        + "}\n";
+
+    private static final String ACCOUNT = "package sample;\n"
+        + "import score.Address;\n"
+        + "import icon.xcall.lib.annotation.XCallStruct;\n"
+        + "@XCallStruct\n"
+        + "public class Account {\n"
+        + "    public String name;\n"
+        + "    public Address owner;\n"
+        + "}\n";
+
+    private static final String SENDER = "package sample;\n"
+        + "public class Sender {\n"
+        + "    public static int parsed;\n"
+        + "    public static Sender valueOf(String address) {\n"
+        + "        parsed++;\n"
+        + "        return new Sender();\n"
+        + "    }\n"
+        + "}\n";
+
+    private static final String BATCHED = "package sample;\n"
+        + "import icon.xcall.lib.annotation.XCall;\n"
+        + "public interface Batched {\n"
+        + "    @XCall\n"
+        + "    void ping(Sender from, int n);\n"
+        + "}\n";
+
+    private static final Map<String, String> HIERARCHY = Map.of(
+        "sample.Base", "package sample;\n"
+            + "import icon.xcall.lib.annotation.XCall;\n"
+            + "public interface Base {\n"
+            + "    @XCall\n"
+            + "    void base(String from, int n);\n"
+            + "}\n",
+        "sample.Left", "package sample;\n"
+            + "import icon.xcall.lib.annotation.XCall;\n"
+            + "public interface Left extends Base {\n"
+            + "    @XCall\n"
+            + "    void left(String from, int n);\n"
+            + "}\n",
+        "sample.Right", "package sample;\n"
+            + "import icon.xcall.lib.annotation.XCall;\n"
+            + "public interface Right extends Base {\n"
+            + "    @XCall\n"
+            + "    void right(String from, int n);\n"
+            + "}\n",
+        "sample.Top", "package sample;\n"
+            + "import icon.xcall.lib.annotation.XCall;\n"
+            + "public interface Top extends Left, Right {\n"
+            + "    @XCall\n"
+            + "    void top(String from, int n);\n"
+            + "}\n");
+
+    private static final String SELECTED = "package sample;\n"
+        + "import icon.xcall.lib.annotation.XCall;\n"
+        + "public interface Selected {\n"
+        + "    @XCall(selector = 1)\n"
+        + "    void first(String from, int n);\n"
+        + "    @XCall(selector = 300)\n"
+        + "    void second(String from, String s);\n"
+        + "}\n";
+
+    private static final Map<String, String> ORDERS = Map.of(
+        "sample.Route", "package sample;\n"
+            + "import icon.xcall.lib.annotation.XCallStruct;\n"
+            + "@XCallStruct\n"
+            + "public class Route {\n"
+            + "    public String net;\n"
+            + "    public int hops;\n"
+            + "}\n",
+        "sample.Order", "package sample;\n"
+            + "import java.math.BigInteger;\n"
+            + "import score.Address;\n"
+            + "import icon.xcall.lib.annotation.XCallStruct;\n"
+            + "@XCallStruct\n"
+            + "public class Order {\n"
+            + "    public Address owner;\n"
+            + "    public BigInteger amount;\n"
+            + "    public Route route;\n"
+            + "}\n",
+        "sample.Orders", "package sample;\n"
+            + "import java.util.List;\n"
+            + "import icon.xcall.lib.annotation.XCall;\n"
+            + "public interface Orders {\n"
+            + "    @XCall\n"
+            + "    void place(String from, Order order, List<Order> more);\n"
+            + "}\n");
+
+    private static Compilation typed;
+
+    @BeforeAll
+    static void compile() {
+        typed = Compilation.compile(Map.of("sample.Typed", TYPED), "xcall.codec=true");
+        assertTrue(typed.success, typed.diagnostics.toString());
+    }
+
+    /**
+     * Encodes a call with the generated codec and returns the arguments its decoder hands back.
+     */
+    private static Object[] roundTrip(String method, Object... args) throws Exception {
+        Class<?> codec = typed.load("icon.xcall.lib.codec.TypedCodec");
+        Class<?> handler = typed.load("icon.xcall.lib.codec.TypedCodec$Handler");
+
+        Method encode = Arrays.stream(codec.getMethods())
+            .filter(m -> m.getName().equals(method) && m.getReturnType() == byte[].class)
+            .findFirst()
+            .orElseThrow();
+        byte[] message = (byte[]) encode.invoke(null, args);
+
+        Method sizeOf = Arrays.stream(codec.getMethods())
+            .filter(m -> m.getName().equals(method + "EncodedSize"))
+            .findFirst()
+            .orElseThrow();
+        assertEquals(message.length, sizeOf.invoke(null, args));
+
+        List<Object[]> decoded = new ArrayList<>();
+        Object proxy = Proxy.newProxyInstance(handler.getClassLoader(), new Class<?>[]{handler}, (p, m, a) -> {
+            assertEquals(method, m.getName());
+            decoded.add(a);
+            return null;
+        });
+        codec.getMethod("decode", byte[].class, handler).invoke(null, message, proxy);
+
+        assertEquals(1, decoded.size());
+        return decoded.get(0);
+    }
+
+    @Test
+    void primitives_RoundTrip() throws Exception {
+        long[] values = {0, 1, 127, 128, 255, 256, -1, -128, -129, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            Object[] args = {(int) value, value, value % 2 == 0, (short) value, (byte) value, (char) value, (int) value, value < 0};
+            assertArrayEquals(args, roundTrip("prims", args), "value " + value);
+        }
+    }
+
+    @Test
+    void arrays_RoundTrip() throws Exception {
+        String hx = "hx" + "ab".repeat(20);
+        String cx = "cx" + "01".repeat(20);
+        Object[] args = {
+            new BigInteger[]{BigInteger.ZERO, BigInteger.TEN.pow(40).negate()},
+            new String[]{hx, cx},
+            new String[]{"a", ""},
+            new int[]{1, -2, Integer.MAX_VALUE},
+            new byte[][]{{1}, {}},
+            new String[][]{{"x"}, {}}
+        };
+        assertArrayEquals(args, roundTrip("arrays", args));
+    }
+
+    @Test
+    void emptyArrays_RoundTrip() throws Exception {
+        Object[] args = {new BigInteger[0], new String[0], new String[0], new int[0], new byte[0][], new String[0][]};
+        assertArrayEquals(args, roundTrip("arrays", args));
+    }
+
+    @Test
+    void lists_RoundTrip() throws Exception {
+        Object[] args = {
+            List.of(BigInteger.TEN, BigInteger.ONE.negate()),
+            List.of(List.of("a", "b"), List.of()),
+            List.of(new long[]{1, Long.MIN_VALUE}, new long[0])
+        };
+        Object[] decoded = roundTrip("lists", args);
+
+        assertEquals(args[0], decoded[0]);
+        assertEquals(args[1], decoded[1]);
+        List<?> longs = (List<?>) decoded[2];
+        assertEquals(2, longs.size());
+        assertArrayEquals(new long[]{1, Long.MIN_VALUE}, (long[]) longs.get(0));
+        assertArrayEquals(new long[0], (long[]) longs.get(1));
+    }
+
+    /**
+     * Runs a message through the generated process of Batched and returns the arguments of every ping.
+     */
+    private static List<Object[]> process(Compilation batched, byte[] message) throws Exception {
+        Class<?> score = batched.load("sample.Batched");
+        List<Object[]> calls = new ArrayList<>();
+        Object proxy = Proxy.newProxyInstance(score.getClassLoader(), new Class<?>[]{score}, (p, m, a) -> {
+            calls.add(a);
+            return null;
+        });
+        batched.load("sample.BatchedXCall")
+            .getMethod("process", score, String.class, byte[].class)
+            .invoke(null, proxy, "0x1.icon/hx" + "ab".repeat(20), message);
+        return calls;
+    }
+
+    private static byte[] batch(Compilation batched, byte[]... calls) throws Exception {
+        return (byte[]) batched.load("icon.xcall.lib.messages.BatchedMessages")
+            .getMethod("batch", byte[][].class)
+            .invoke(null, (Object) calls);
+    }
+
+    private static byte[] ping(Compilation batched, int n) throws Exception {
+        return (byte[]) batched.load("icon.xcall.lib.messages.BatchedMessages")
+            .getMethod("ping", int.class)
+            .invoke(null, n);
+    }
+
+    @Test
+    void batch_ParsesFromOnce() throws Exception {
+        Compilation batched = Compilation.compile(Map.of("sample.Sender", SENDER, "sample.Batched", BATCHED));
+        assertTrue(batched.success, batched.diagnostics.toString());
+
+        List<Object[]> calls = process(batched, batch(batched, ping(batched, 1), ping(batched, 2), ping(batched, 3)));
+
+        assertEquals(3, calls.size());
+        assertEquals(List.of(1, 2, 3), Arrays.asList(calls.get(0)[1], calls.get(1)[1], calls.get(2)[1]));
+        assertSame(calls.get(0)[0], calls.get(1)[0]);
+        assertSame(calls.get(0)[0], calls.get(2)[0]);
+        assertEquals(1, batched.load("sample.Sender").getField("parsed").getInt(null));
+    }
+
+    @Test
+    void nestedBatch_Rejected() throws Exception {
+        Compilation batched = Compilation.compile(Map.of("sample.Sender", SENDER, "sample.Batched", BATCHED));
+        assertTrue(batched.success, batched.diagnostics.toString());
+        byte[] nested = batch(batched, ping(batched, 1), batch(batched, ping(batched, 2)));
+
+        InvocationTargetException e = assertThrows(InvocationTargetException.class, () -> process(batched, nested));
+        assertInstanceOf(AssertionError.class, e.getCause());
+    }
+
+    @Test
+    void selectors_Dispatched() throws Exception {
+        Compilation selected = Compilation.compile(Map.of("sample.Selected", SELECTED));
+        assertTrue(selected.success, selected.diagnostics.toString());
+        Class<?> score = selected.load("sample.Selected");
+        Class<?> messages = selected.load("icon.xcall.lib.messages.SelectedMessages");
+        Method process = selected.load("sample.SelectedXCall").getMethod("process", score, String.class, byte[].class);
+
+        List<String> called = new ArrayList<>();
+        Object proxy = Proxy.newProxyInstance(score.getClassLoader(), new Class<?>[]{score}, (p, m, a) -> {
+            called.add(m.getName() + "(" + a[1] + ")");
+            return null;
+        });
+
+        byte[] first = (byte[]) messages.getMethod("first", int.class).invoke(null, 7);
+        byte[] second = (byte[]) messages.getMethod("second", String.class).invoke(null, "x");
+        // [0x01, 0x07] and [0x82 0x01 0x2c, "x"], the selector in place of the name
+        assertArrayEquals(new byte[]{(byte) 0xc2, 0x01, 0x07}, first);
+        assertArrayEquals(new byte[]{(byte) 0xc4, (byte) 0x82, 0x01, 0x2c, 'x'}, second);
+
+        process.invoke(null, proxy, "from", first);
+        process.invoke(null, proxy, "from", second);
+        byte[] batch = (byte[]) messages.getMethod("batch", byte[][].class).invoke(null, (Object) new byte[][]{second, first});
+        process.invoke(null, proxy, "from", batch);
+
+        assertEquals(List.of("first(7)", "second(x)", "second(x)", "first(7)"), called);
+    }
+
+    @Test
+    void unknownSelector_Reverts() throws Exception {
+        Compilation selected = Compilation.compile(Map.of("sample.Selected", SELECTED));
+        assertTrue(selected.success, selected.diagnostics.toString());
+        Class<?> score = selected.load("sample.Selected");
+        Method process = selected.load("sample.SelectedXCall").getMethod("process", score, String.class, byte[].class);
+        Object proxy = Proxy.newProxyInstance(score.getClassLoader(), new Class<?>[]{score}, (p, m, a) -> {
+            throw new IllegalStateException("dispatched " + m.getName());
+        });
+
+        // Selector 2 is not declared
+        byte[] message = {(byte) 0xc2, 0x02, 0x07};
+        InvocationTargetException e = assertThrows(InvocationTargetException.class, () -> process.invoke(null, proxy, "from", message));
+        assertFalse(e.getCause() instanceof IllegalStateException, e.getCause().toString());
+    }
+
+    @Test
+    void inheritedMethods_Dispatched() throws Exception {
+        Compilation hierarchy = Compilation.compile(HIERARCHY);
+        assertTrue(hierarchy.success, hierarchy.diagnostics.toString());
+        Class<?> top = hierarchy.load("sample.Top");
+        Class<?> messages = hierarchy.load("icon.xcall.lib.messages.TopMessages");
+        Method process = hierarchy.load("sample.TopXCall").getMethod("process", top, String.class, byte[].class);
+
+        List<String> called = new ArrayList<>();
+        Object proxy = Proxy.newProxyInstance(top.getClassLoader(), new Class<?>[]{top}, (p, m, a) -> {
+            called.add(m.getName() + a[1]);
+            return null;
+        });
+        // Base is reached through both Left and Right but only dispatched once
+        List<String> methods = List.of("top", "left", "base", "right");
+        for (int i = 0; i < methods.size(); i++) {
+            byte[] message = (byte[]) messages.getMethod(methods.get(i), int.class).invoke(null, i);
+            process.invoke(null, proxy, "from", message);
+        }
+
+        assertEquals(List.of("top0", "left1", "base2", "right3"), called);
+    }
+
+    @Test
+    void annotations_NotInClassFiles() throws Exception {
+        Compilation hierarchy = Compilation.compile(HIERARCHY);
+        assertTrue(hierarchy.success, hierarchy.diagnostics.toString());
+
+        // The deployed jar must not reference the annotation classes, which are compile only
+        for (String className : HIERARCHY.keySet()) {
+            byte[] classFile = Files.readAllBytes(hierarchy.output.resolve(className.replace('.', '/') + ".class"));
+            String content = new String(classFile, StandardCharsets.ISO_8859_1);
+            assertFalse(content.contains("icon/xcall/lib/annotation"), className);
+        }
+    }
+
+    private static Object order(Compilation orders, String owner, long amount, String net, int hops) throws Exception {
+        Object route = orders.load("sample.Route").getConstructor().newInstance();
+        route.getClass().getField("net").set(route, net);
+        route.getClass().getField("hops").setInt(route, hops);
+        Object order = orders.load("sample.Order").getConstructor().newInstance();
+        order.getClass().getField("owner").set(order, Address.fromString(owner));
+        order.getClass().getField("amount").set(order, BigInteger.valueOf(amount));
+        order.getClass().getField("route").set(order, route);
+        return order;
+    }
+
+    private static String describe(Object order) throws Exception {
+        Object route = order.getClass().getField("route").get(order);
+        return order.getClass().getField("owner").get(order) + " " + order.getClass().getField("amount").get(order)
+            + " " + route.getClass().getField("net").get(route) + " " + route.getClass().getField("hops").get(route);
+    }
+
+    @Test
+    void structs_RoundTripOnChain() throws Exception {
+        Compilation orders = Compilation.compile(ORDERS);
+        assertTrue(orders.success, orders.diagnostics.toString());
+        Class<?> score = orders.load("sample.Orders");
+        Class<?> order = orders.load("sample.Order");
+        String hx = "hx" + "ab".repeat(20);
+        String cx = "cx" + "01".repeat(20);
+
+        Object first = order(orders, hx, 10, "0x1.icon", 0);
+        List<Object> more = List.of(order(orders, cx, 0, "0x2.eth", 2), order(orders, hx, -5, "", 1));
+        byte[] message = (byte[]) orders.load("icon.xcall.lib.messages.OrdersMessages")
+            .getMethod("place", order, List.class)
+            .invoke(null, first, more);
+        assertEquals(message.length, orders.load("icon.xcall.lib.messages.OrdersMessages")
+            .getMethod("placeEncodedSize", order, List.class)
+            .invoke(null, first, more));
+
+        List<String> decoded = new ArrayList<>();
+        Object proxy = Proxy.newProxyInstance(score.getClassLoader(), new Class<?>[]{score}, (p, m, a) -> {
+            decoded.add(describe(a[1]));
+            for (Object item : (List<?>) a[2]) {
+                decoded.add(describe(item));
+            }
+            return null;
+        });
+        orders.load("sample.OrdersXCall")
+            .getMethod("process", score, String.class, byte[].class)
+            .invoke(null, proxy, "from", message);
+
+        assertEquals(List.of(hx + " 10 0x1.icon 0", cx + " 0 0x2.eth 2", hx + " -5  1"), decoded);
+    }
+
+    @Test
+    void schema_WrittenNextToClasses() throws Exception {
+        Compilation orders = Compilation.compile(ORDERS);
+        assertTrue(orders.success, orders.diagnostics.toString());
+
+        String schema = Files.readString(orders.output.resolve("META-INF/xcall/sample.Orders.json"));
+        assertEquals("{\n"
+            + "  \"version\": 1,\n"
+            + "  \"class\": \"sample.Orders\",\n"
+            + "  \"encoding\": \"RLPn\",\n"
+            + "  \"mode\": \"name\",\n"
+            + "  \"batch\": \"#batch\",\n"
+            + "  \"sequenced\": {\n"
+            + "    \"marker\": \"#seq\",\n"
+            + "    \"params\": [\n"
+            + "      { \"name\": \"sn\", \"type\": \"bigint\", \"position\": 1 },\n"
+            + "      { \"name\": \"call\", \"type\": \"bytes\", \"position\": 2 }\n"
+            + "    ]\n"
+            + "  },\n"
+            + "  \"methods\": [\n"
+            + "    {\n"
+            + "      \"name\": \"place\",\n"
+            + "      \"selector\": 0,\n"
+            + "      \"params\": [\n"
+            + "        { \"name\": \"order\", \"type\": \"struct:sample.Order\", \"position\": 1 },\n"
+            + "        { \"name\": \"more\", \"type\": \"struct:sample.Order[]\", \"position\": 2 }\n"
+            + "      ]\n"
+            + "    }\n"
+            + "  ],\n"
+            + "  \"structs\": {\n"
+            + "    \"sample.Order\": [\n"
+            + "      { \"name\": \"owner\", \"type\": \"address\", \"position\": 0 },\n"
+            + "      { \"name\": \"amount\", \"type\": \"bigint\", \"position\": 1 },\n"
+            + "      { \"name\": \"route\", \"type\": \"struct:sample.Route\", \"position\": 2 }\n"
+            + "    ],\n"
+            + "    \"sample.Route\": [\n"
+            + "      { \"name\": \"net\", \"type\": \"string\", \"position\": 0 },\n"
+            + "      { \"name\": \"hops\", \"type\": \"int32\", \"position\": 1 }\n"
+            + "    ]\n"
+            + "  }\n"
+            + "}\n", schema);
+    }
+
+    @Test
+    void schema_ListsSelectors() throws Exception {
+        Compilation selected = Compilation.compile(Map.of("sample.Selected", SELECTED));
+        assertTrue(selected.success, selected.diagnostics.toString());
+
+        String schema = Files.readString(selected.output.resolve("META-INF/xcall/sample.Selected.json"));
+        assertTrue(schema.contains("\"mode\": \"selector\",\n  \"batch\": 0,"), schema);
+        assertTrue(schema.contains("\"marker\": -1,"), schema);
+        assertTrue(schema.contains("\"name\": \"first\",\n      \"selector\": 1,"), schema);
+        assertTrue(schema.contains("\"name\": \"second\",\n      \"selector\": 300,"), schema);
+    }
+
+    @Test
+    void structAddressField_OnChainOnly() {
+        Compilation compilation = Compilation.compile(Map.of("sample.Account", ACCOUNT));
+        assertTrue(compilation.success, compilation.diagnostics.toString());
+    }
+
+    @Test
+    void structAddressField_ReportedWithCodecs() {
+        Compilation compilation = Compilation.compile(Map.of("sample.Account", ACCOUNT), "xcall.codec=true");
+
+        assertFalse(compilation.success);
+        List<String> errors = compilation.errors();
+        assertEquals(1, errors.size(), errors.toString());
+        assertTrue(errors.get(0).contains("Account.owner"), errors.get(0));
+        // Reported on the field itself
+        assertEquals(7, compilation.diagnostics.stream()
+            .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+            .findFirst()
+            .orElseThrow()
+            .getLineNumber());
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2022-2023 Balanced.network.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package icon.xcall.lib.rlp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class RLPTest {
+    private static final int[] LENGTHS = {0, 1, 2, 55, 56, 255, 256, 65535, 65536};
+
+    private static byte[] bytes(int length) {
+        byte[] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = (byte) (i * 7 + 0x81);
+        }
+        return value;
+    }
+
+    @Test
+    void byteArray_LengthBoundaries() {
+        for (int length : LENGTHS) {
+            byte[] value = bytes(length);
+            RLPWriter writer = new RLPWriter();
+            writer.write(value);
+            byte[] encoded = writer.toByteArray();
+
+            assertEquals(RLPSize.of(value), encoded.length, "length " + length);
+            assertArrayEquals(value, new RLPReader(encoded).readByteArray(), "length " + length);
+        }
+    }
+
+    @Test
+    void byteArray_Headers() {
+        RLPWriter writer = new RLPWriter();
+        writer.write(bytes(55));
+        byte[] encoded = writer.toByteArray();
+        assertEquals(0x80 + 55, encoded[0] & 0xff);
+        assertEquals(56, encoded.length);
+
+        writer.reset();
+        writer.write(bytes(56));
+        encoded = writer.toByteArray();
+        assertEquals(0xb8, encoded[0] & 0xff);
+        assertEquals(56, encoded[1]);
+        assertEquals(58, encoded.length);
+
+        writer.reset();
+        writer.write(new byte[]{0x7f});
+        assertArrayEquals(new byte[]{0x7f}, writer.toByteArray());
+
+        writer.reset();
+        writer.write(new byte[]{(byte) 0x80});
+        assertArrayEquals(new byte[]{(byte) 0x81, (byte) 0x80}, writer.toByteArray());
+    }
+
+    @Test
+    void string_LengthBoundaries() {
+        for (String value : new String[]{"", "a", "a".repeat(55), "a".repeat(56), "é".repeat(28), "😀".repeat(14)}) {
+            RLPWriter writer = new RLPWriter();
+            writer.write(value);
+            byte[] encoded = writer.toByteArray();
+
+            assertEquals(RLPSize.of(value), encoded.length, value);
+            assertEquals(value, new RLPReader(encoded).readString());
+        }
+    }
+
+    @Test
+    void list_LengthBoundaries() {
+        // Small integers encode as a single byte, so n items make a payload of n bytes
+        for (int payload : new int[]{0, 1, 55, 56, 255, 256}) {
+            RLPWriter writer = new RLPWriter();
+            writer.beginList();
+            for (int i = 0; i < payload; i++) {
+                writer.write(i & 0x7f);
+            }
+            writer.end();
+            byte[] encoded = writer.toByteArray();
+            assertEquals(RLPSize.list(payload), encoded.length, "payload " + payload);
+
+            RLPWriter sized = new RLPWriter(new byte[encoded.length]);
+            sized.writeListHeader(payload);
+            for (int i = 0; i < payload; i++) {
+                sized.write(i & 0x7f);
+            }
+            assertArrayEquals(encoded, sized.toByteArray(), "payload " + payload);
+
+            RLPReader reader = new RLPReader(encoded);
+            reader.beginList();
+            for (int i = 0; i < payload; i++) {
+                assertEquals(i & 0x7f, reader.readInt());
+            }
+            assertFalse(reader.hasNext());
+            reader.end();
+        }
+    }
+
+    @Test
+    void list_Headers() {
+        RLPWriter writer = new RLPWriter();
+        writer.beginList();
+        for (int i = 0; i < 55; i++) {
+            writer.write(1);
+        }
+        writer.end();
+        assertEquals(0xc0 + 55, writer.toByteArray()[0] & 0xff);
+
+        writer.reset();
+        writer.beginList();
+        for (int i = 0; i < 56; i++) {
+            writer.write(1);
+        }
+        writer.end();
+        byte[] encoded = writer.toByteArray();
+        assertEquals(0xf8, encoded[0] & 0xff);
+        assertEquals(56, encoded[1]);
+    }
+
+    @Test
+    void bigInteger_RoundTrip() {
+        BigInteger[] values = {
+            BigInteger.ZERO,
+            BigInteger.ONE,
+            BigInteger.ONE.negate(),
+            BigInteger.valueOf(127),
+            BigInteger.valueOf(128),
+            BigInteger.valueOf(-128),
+            BigInteger.valueOf(-129),
+            BigInteger.TWO.pow(64),
+            BigInteger.TWO.pow(64).negate(),
+            BigInteger.TEN.pow(77).negate()
+        };
+        for (BigInteger value : values) {
+            RLPWriter writer = new RLPWriter();
+            writer.write(value);
+            byte[] encoded = writer.toByteArray();
+
+            assertEquals(RLPSize.of(value), encoded.length, value.toString());
+            assertEquals(value, new RLPReader(encoded).readBigInteger());
+        }
+    }
+
+    @Test
+    void bigInteger_ZeroAndNegativeEncoding() {
+        RLPWriter writer = new RLPWriter();
+        writer.write(BigInteger.ZERO);
+        assertArrayEquals(new byte[]{0}, writer.toByteArray());
+
+        writer.reset();
+        writer.write(BigInteger.ONE.negate());
+        assertArrayEquals(new byte[]{(byte) 0x81, (byte) 0xff}, writer.toByteArray());
+
+        // An empty string also reads as zero
+        assertEquals(BigInteger.ZERO, new RLPReader(new byte[]{(byte) 0x80}).readBigInteger());
+    }
+
+    @Test
+    void long_MatchesBigInteger() {
+        long[] values = {0, 1, 127, 128, 255, 256, -1, -128, -129, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            RLPWriter longWriter = new RLPWriter();
+            longWriter.write(value);
+            RLPWriter bigWriter = new RLPWriter();
+            bigWriter.write(BigInteger.valueOf(value));
+            byte[] encoded = longWriter.toByteArray();
+
+            assertArrayEquals(bigWriter.toByteArray(), encoded, "value " + value);
+            assertEquals(RLPSize.of(value), encoded.length);
+            assertEquals(value, new RLPReader(encoded).readLong());
+        }
+    }
+
+    @Test
+    void long_OutOfRange() {
+        RLPWriter writer = new RLPWriter();
+        writer.write(BigInteger.TWO.pow(64));
+        assertThrows(ArithmeticException.class, () -> new RLPReader(writer.toByteArray()).readLong());
+    }
+
+    @Test
+    void byteBuffer_RoundTrip() {
+        for (int length : LENGTHS) {
+            byte[] value = bytes(length);
+            ByteBuffer direct = ByteBuffer.allocateDirect(length);
+            direct.put(value).flip();
+
+            RLPWriter writer = new RLPWriter();
+            writer.write(direct);
+            byte[] encoded = writer.toByteArray();
+
+            assertEquals(RLPWriter.sizeOf(direct), encoded.length);
+            ByteBuffer read = new RLPReader(encoded).readByteBuffer();
+            byte[] copy = new byte[read.remaining()];
+            read.get(copy);
+            assertArrayEquals(value, copy);
+        }
+    }
+}